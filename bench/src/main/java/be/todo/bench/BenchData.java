@@ -0,0 +1,78 @@
+package be.todo.bench;
+
+import be.todo.model.Task;
+import be.todo.model.TaskCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/** Deterministic synthetic datasets shared by the benchmarks. */
+final class BenchData {
+    private static final OffsetDateTime EPOCH = OffsetDateTime.of(2024, 1, 1, 9, 0, 0, 0, ZoneOffset.UTC);
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 1);
+
+    private BenchData() { }
+
+    static List<Task> tasks(int size, double doneRatio, int titleLength) {
+        SplittableRandom rnd = new SplittableRandom(42);
+        List<Task> out = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            OffsetDateTime created = EPOCH.plusSeconds(i * 37L).plusNanos(rnd.nextInt(1_000_000_000));
+            LocalDate due = rnd.nextInt(3) == 0 ? null : TODAY.plusDays(rnd.nextInt(-60, 120));
+            out.add(new Task(i, title(rnd, titleLength), rnd.nextDouble() < doneRatio, created, due));
+        }
+        return out;
+    }
+
+    static String title(SplittableRandom rnd, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            if (sb.length() > 0) sb.append(' ');
+            int word = rnd.nextInt(2, 9);
+            for (int i = 0; i < word && sb.length() < length; i++) sb.append((char) ('a' + rnd.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    static Path tempDir() {
+        try {
+            return Files.createTempDirectory("todo-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path writeJsonLines(Path dir, List<Task> tasks) {
+        Path file = dir.resolve("todo-data.json");
+        List<Task> sorted = new ArrayList<>(tasks);
+        sorted.sort(Comparator.comparingLong(Task::getId));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new TaskCodec().encodeAll(sorted, ch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return file;
+    }
+
+    static void delete(Path dir) {
+        if (dir == null) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package be.todo.bench;
+
+import be.todo.model.Task;
+import be.todo.model.TaskCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Per-task cost of the JSON-lines encoding. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"16", "128"})
+    int titleLength;
+
+    @Param({"0.0", "0.5"})
+    double doneRatio;
+
+    private Task task;
+    private String json;
+    private ByteBuffer bytes;
+    private final TaskCodec codec = new TaskCodec();
+
+    @Setup
+    public void setUp() {
+        List<Task> tasks = BenchData.tasks(64, doneRatio, titleLength);
+        task = tasks.get(tasks.size() / 2);
+        json = task.toJson();
+        bytes = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String toJson() {
+        return task.toJson();
+    }
+
+    @Benchmark
+    public Task fromJson() {
+        return Task.fromJson(json);
+    }
+
+    @Benchmark
+    public Task decodeBytes() {
+        return codec.decode(bytes, 0, bytes.limit());
+    }
+}
@@ -0,0 +1,136 @@
+package be.todo.bench;
+
+import be.todo.model.Task;
+import be.todo.storage.TaskRepository;
+import be.todo.storage.TaskStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of many threads mutating one {@link TaskStore}. Every update flips
+ * a task's done flag and moves its due date one day on, so after each iteration
+ * the due dates must add up to the number of updates and the partitions must
+ * agree with the flags, which catches a lost update under real contention. That
+ * the flushed file matches the store is checked by {@code TaskStoreStressTest}
+ * in {@code test}, which {@code ./gradlew check} runs.
+ * <p>
+ * Run with {@code -PjmhArgs="ConcurrencyBenchmark -t 1"}, {@code -t 2}, ... to see
+ * how throughput scales with cores; the default uses all of them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+    private static final LocalDate START = LocalDate.ofEpochDay(0);
+
+    @Param({"100000"})
+    int size;
+
+    /** Tasks the writers contend on; fewer means more compare-and-set retries. */
+    @Param({"16", "100000"})
+    int hot;
+
+    private Path dir;
+    private TaskRepository repo;
+    private TaskStore store;
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder creates = new LongAdder();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        dir = BenchData.tempDir();
+        List<Task> tasks = BenchData.tasks(size, 0.0, 32).stream()
+                .map(t -> new Task(t.getId(), t.getTitle(), false, t.getCreatedAt(), START))
+                .toList();
+        repo = new TaskRepository(BenchData.writeJsonLines(dir, tasks));
+        store = new TaskStore(repo, Duration.ofMillis(200));
+        updates.reset();
+        creates.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() {
+        try {
+            long days = 0;
+            for (long id = 1; id <= size; id++) {
+                Task t = store.get(id).orElseThrow(() -> new IllegalStateException("task lost"));
+                long d = t.getDue().toEpochDay();
+                if (t.isDone() != ((d & 1) == 1)) throw new IllegalStateException("done flag out of step on #" + t.getId());
+                days += d;
+            }
+            check("updates", updates.sum(), days);
+            check("tasks", size + creates.sum(), store.size());
+            check("pending + done", store.size(), store.pending().size() + store.done().size());
+            check("done count", store.done().size(), store.doneCount());
+        } finally {
+            store.close();
+            repo.close();
+            BenchData.delete(dir);
+        }
+    }
+
+    private static void check(String what, long expected, long actual) {
+        if (expected != actual) throw new IllegalStateException(what + ": expected " + expected + ", found " + actual);
+    }
+
+    @Benchmark
+    public boolean update() {
+        long id = ThreadLocalRandom.current().nextInt(hot) + 1;
+        boolean changed = store.update(id, t -> new Task(t.getId(), t.getTitle(), !t.isDone(),
+                t.getCreatedAt(), t.getDue().plusDays(1)));
+        updates.increment();
+        return changed;
+    }
+
+    @Benchmark
+    public Task create() {
+        Task t = store.create("stress", null);
+        creates.increment();
+        return t;
+    }
+
+    @Benchmark
+    public Task read() {
+        return store.get(ThreadLocalRandom.current().nextInt(size) + 1).orElseThrow();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Task mixedRead() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean mixedUpdate() {
+        return update();
+    }
+}
@@ -0,0 +1,92 @@
+package be.todo.bench;
+
+import be.todo.model.Task;
+import be.todo.storage.StorageMode;
+import be.todo.storage.StorageOptions;
+import be.todo.storage.TaskRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-file load and store through {@link TaskRepository}, per on-disk format,
+ * and the cost of saving a single completed task.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"0.0", "0.5"})
+    double doneRatio;
+
+    @Param({"16", "128"})
+    int titleLength;
+
+    @Param({"JSON_LINES", "BINARY", "ARENA"})
+    StorageMode storage;
+
+    private Path dir;
+    private List<Task> tasks;
+    private TaskRepository repo;
+    private TaskRepository mappedRepo;
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        dir = BenchData.tempDir();
+        tasks = BenchData.tasks(size, doneRatio, titleLength);
+        Path file = BenchData.writeJsonLines(dir, tasks);
+        StorageOptions options = StorageOptions.defaults().withMode(storage);
+        repo = new TaskRepository(file, options);
+        repo.findAll(); // converts the file when the format is binary
+        mappedRepo = new TaskRepository(file, options.withParallelLoad(true));
+    }
+
+    @TearDown
+    public void tearDown() {
+        repo.close();
+        mappedRepo.close();
+        BenchData.delete(dir);
+    }
+
+    @Benchmark
+    public List<Task> findAll() {
+        return repo.findAll();
+    }
+
+    @Benchmark
+    public List<Task> findAllMapped() {
+        return mappedRepo.findAll();
+    }
+
+    @Benchmark
+    public void saveAll() {
+        repo.saveAll(tasks);
+    }
+
+    /** Toggles one task's done flag: a whole-file rewrite, or one slot in the arena. */
+    @Benchmark
+    public boolean toggleDone() {
+        long id = nextId++ % size + 1;
+        return repo.update(id, t -> t.withDone(!t.isDone()));
+    }
+}
@@ -0,0 +1,107 @@
+package be.todo.bench;
+
+import be.todo.model.Task;
+import be.todo.service.TodoService;
+import be.todo.storage.StorageMode;
+import be.todo.storage.TaskRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TodoService} operations with every change written through to disk,
+ * so single-task mutations include their persistence cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"0.0", "0.5"})
+    double doneRatio;
+
+    @Param({"16", "128"})
+    int titleLength;
+
+    @Param({"JSON_LINES", "LOG"})
+    StorageMode storage;
+
+    private Path dir;
+    private Path file;
+    private TaskRepository repo;
+    private TodoService service;
+    private long probe;
+    private long flip;
+
+    @Setup
+    public void setUp() {
+        dir = BenchData.tempDir();
+        file = BenchData.writeJsonLines(dir, BenchData.tasks(size, doneRatio, titleLength));
+        repo = new TaskRepository(file, storage);
+        service = new TodoService(repo, Duration.ZERO);
+        probe = size / 2 + 1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.close();
+        repo.close();
+        BenchData.delete(dir);
+    }
+
+    @Benchmark
+    public boolean updateDue() {
+        return service.updateDue(probe, LocalDate.of(2025, 1, 1).plusDays(flip++ & 1));
+    }
+
+    @Benchmark
+    public boolean addThenRemove() {
+        Task t = service.add("benchmark task", null);
+        return service.remove(t.getId());
+    }
+
+    @Benchmark
+    public List<Task> listPending() {
+        return service.listPending();
+    }
+
+    @Benchmark
+    public TodoService.Stats stats() {
+        return service.stats();
+    }
+
+    @Benchmark
+    public Task getById() {
+        return service.getById(probe).orElseThrow();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public TodoService.Stats coldStart() {
+        try (var r = new TaskRepository(file, storage); var s = new TodoService(r, Duration.ZERO)) {
+            return s.stats();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package be.todo.bench;
+
+import be.todo.ui.TodoApp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a one-shot {@code --cli} command in a fresh JVM to its
+ * first byte of output, with and without class data sharing. {@code app} uses
+ * an archive recorded from the command itself, as the start scripts do; it only
+ * helps when the app is on the class path as a jar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"off", "jdk", "app"})
+    String cds;
+
+    @Param({"list", "add"})
+    String command;
+
+    @Param({"1000"})
+    int size;
+
+    private Path dir;
+    private List<String> commandLine;
+    private Process process;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchData.tempDir();
+        Path file = BenchData.writeJsonLines(dir, BenchData.tasks(size, 0.5, 32));
+        List<String> jvm = new ArrayList<>();
+        jvm.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        switch (cds) {
+            case "off" -> jvm.add("-Xshare:off");
+            case "jdk" -> { } // the JDK's own archive of its core classes, on by default
+            case "app" -> jvm.add("-XX:SharedArchiveFile=" + dir.resolve("todo.jsa"));
+            default -> throw new IllegalArgumentException(cds);
+        }
+        jvm.addAll(List.of("-cp", appClassPath(), TodoApp.class.getName(),
+                "--cli", "--no-daemon", "--file", file.toString()));
+        jvm.addAll(command.equals("add") ? List.of("add", "Call the plumber") : List.of("list", "--pending"));
+        commandLine = jvm;
+        if (cds.equals("app")) {
+            List<String> training = new ArrayList<>(jvm);
+            training.set(1, "-XX:ArchiveClassesAtExit=" + dir.resolve("todo.jsa"));
+            run(training);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchData.delete(dir);
+    }
+
+    @Benchmark
+    public int firstOutput() throws IOException {
+        process = new ProcessBuilder(commandLine).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        return process.getInputStream().read();
+    }
+
+    /** Lets the command finish outside the measurement, so runs never overlap. */
+    @TearDown(Level.Invocation)
+    public void finish() throws Exception {
+        try (InputStream rest = process.getInputStream()) {
+            rest.transferTo(OutputStream.nullOutputStream());
+        }
+        if (process.waitFor() != 0) throw new IllegalStateException("Command failed: " + commandLine);
+    }
+
+    private static void run(List<String> commandLine) throws Exception {
+        Process p = new ProcessBuilder(commandLine).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (p.waitFor() != 0) throw new IllegalStateException("Command failed: " + commandLine);
+    }
+
+    /** The app's jar (or classes directory), without the benchmark's own dependencies. */
+    private static String appClassPath() throws URISyntaxException {
+        return new File(TodoApp.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+}
@@ -0,0 +1,8 @@
+package be.todo.metrics;
+
+import java.util.Map;
+
+/** JMX view of every counter in a {@link Metrics} registry, by name. */
+public interface CountersMXBean {
+    Map<String, Long> getCounters();
+}
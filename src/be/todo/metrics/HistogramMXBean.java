@@ -0,0 +1,18 @@
+package be.todo.metrics;
+
+/** JMX view of one {@link Histogram}; timers report nanoseconds. */
+public interface HistogramMXBean {
+    long getCount();
+
+    double getMean();
+
+    long getP50();
+
+    long getP90();
+
+    long getP99();
+
+    long getP999();
+
+    long getMax();
+}
@@ -0,0 +1,125 @@
+package be.todo.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named latency histograms and counters for the whole process. Instrumented
+ * code looks its histograms and counters up once, into static fields, and
+ * records into them directly; reading them ({@link #report()}, JMX, a dump
+ * file) never blocks recording.
+ */
+public final class Metrics {
+    private static final Metrics GLOBAL = new Metrics();
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private MetricsMBeans mbeans;
+
+    private Metrics() { }
+
+    public static Metrics global() { return GLOBAL; }
+
+    /** The histogram of durations, in nanoseconds, with this name. */
+    public Histogram timer(String name) {
+        return histogram(name, true);
+    }
+
+    /** The histogram of plain values (sizes, counts) with this name. */
+    public Histogram histogram(String name) {
+        return histogram(name, false);
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    private Histogram histogram(String name, boolean nanos) {
+        Histogram h = histograms.get(name);
+        if (h != null) return h;
+        synchronized (this) {
+            h = histograms.computeIfAbsent(name, n -> new Histogram(n, nanos));
+            if (mbeans != null) mbeans.register(h);
+            return h;
+        }
+    }
+
+    /** Every histogram that has recorded something, then every counter, one per line, by name. */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %9s %9s %9s %9s %9s %9s%n", "operation", "count", "mean", "p50", "p90", "p99", "max"));
+        for (Histogram h : new TreeMap<>(histograms).values()) {
+            Histogram.Snapshot s = h.snapshot();
+            if (s.count() == 0) continue;
+            sb.append(String.format("%-28s %9d %9s %9s %9s %9s %9s%n", s.name(), s.count(), s.format(s.mean()),
+                    s.format(s.percentile(50)), s.format(s.percentile(90)), s.format(s.percentile(99)),
+                    s.format(s.max())));
+        }
+        sb.append(String.format("%n%-28s %9s%n", "counter", "value"));
+        for (var e : counterValues().entrySet()) sb.append(String.format("%-28s %9d%n", e.getKey(), e.getValue()));
+        return sb.toString();
+    }
+
+    private Map<String, Long> counterValues() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, c) -> values.put(name, c.sum()));
+        return values;
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server, as
+     * {@code be.todo:type=Histogram,name=<name>} and {@code be.todo:type=Counters}.
+     * Histograms created later are published as they appear.
+     */
+    public synchronized void registerMBeans() {
+        if (mbeans != null) return;
+        mbeans = new MetricsMBeans(this::counterValues);
+        for (Histogram h : histograms.values()) mbeans.register(h);
+    }
+
+    /**
+     * Rewrites {@code file} with the {@link #report()} every {@code interval}, and
+     * once more when the returned handle is closed. The file is replaced
+     * atomically, so a reader never sees half a report.
+     */
+    public AutoCloseable dumpEvery(Path file, Duration interval) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "todo-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        long ms = Math.max(1, interval.toMillis());
+        dumper.scheduleWithFixedDelay(() -> dumpQuietly(file), ms, ms, TimeUnit.MILLISECONDS);
+        return () -> {
+            dumper.shutdownNow();
+            dumpQuietly(file);
+        };
+    }
+
+    private void dumpQuietly(Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(tmp, "# " + OffsetDateTime.now() + System.lineSeparator() + report(), StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package be.todo.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Publishes a {@link Metrics} registry on the platform MBean server. Kept apart
+ * from {@link Metrics} so that recording never loads any JMX class.
+ */
+final class MetricsMBeans {
+    private static final String DOMAIN = "be.todo";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    MetricsMBeans(CountersMXBean counters) {
+        register(counters, DOMAIN + ":type=Counters");
+    }
+
+    void register(Histogram h) {
+        HistogramMXBean view = new HistogramMXBean() {
+            public long getCount() { return h.snapshot().count(); }
+            public double getMean() { return h.snapshot().mean(); }
+            public long getP50() { return h.snapshot().percentile(50); }
+            public long getP90() { return h.snapshot().percentile(90); }
+            public long getP99() { return h.snapshot().percentile(99); }
+            public long getP999() { return h.snapshot().percentile(99.9); }
+            public long getMax() { return h.snapshot().max(); }
+        };
+        register(view, DOMAIN + ":type=Histogram,name=" + ObjectName.quote(h.name()));
+    }
+
+    private void register(Object mbean, String name) {
+        try {
+            server.registerMBean(mbean, new ObjectName(name));
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register MBean " + name, e);
+        }
+    }
+}
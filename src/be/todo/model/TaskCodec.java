@@ -0,0 +1,587 @@
+package be.todo.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Single-pass JSON-lines codec for {@link Task}. Decoding works directly on
+ * UTF-8 bytes in a {@link ByteBuffer} window and only allocates the title
+ * string and the date objects; encoding appends into a reusable byte buffer.
+ * String values support the full set of JSON escapes.
+ * <p>
+ * Instances keep scratch buffers and are not thread-safe; use one per thread
+ * (or {@link #shared()}).
+ */
+public final class TaskCodec {
+    private static final ThreadLocal<TaskCodec> SHARED = ThreadLocal.withInitial(TaskCodec::new);
+    private static final int READ_BUFFER = 64 * 1024;
+    private static final int WRITE_FLUSH = 64 * 1024;
+
+    private static final byte[] K_ID = ascii("id");
+    private static final byte[] K_TITLE = ascii("title");
+    private static final byte[] K_DONE = ascii("done");
+    private static final byte[] K_CREATED = ascii("createdAt");
+    private static final byte[] K_DUE = ascii("due");
+
+    // decoder state
+    private ByteBuffer in;
+    private int pos;
+    private int end;
+    private byte[] scratch = new byte[256];
+    private ByteBuffer readBuffer;
+
+    // encoder state
+    private byte[] out = new byte[1024];
+    private int len;
+
+    /** A codec owned by the calling thread. */
+    public static TaskCodec shared() {
+        return SHARED.get();
+    }
+
+    // ---------------------------------------------------------------- decode
+
+    public Task decode(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return decode(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /** Decodes one JSON object from {@code buf[from, to)} without touching the buffer's position. */
+    public Task decode(ByteBuffer buf, int from, int to) {
+        in = buf;
+        pos = from;
+        end = to;
+        try {
+            return decodeObject();
+        } finally {
+            in = null;
+        }
+    }
+
+    /** Decodes every non-blank line in {@code buf[from, to)}. */
+    public void decodeLines(ByteBuffer buf, int from, int to, Consumer<Task> sink) {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == '\n') {
+                decodeLine(buf, start, i, sink);
+                start = i + 1;
+            }
+        }
+        decodeLine(buf, start, to, sink);
+    }
+
+    /** Streams every non-blank line from {@code ch} through a reusable read window. */
+    public void decodeLines(ReadableByteChannel ch, Consumer<Task> sink) throws IOException {
+        if (readBuffer == null) readBuffer = ByteBuffer.allocate(READ_BUFFER);
+        ByteBuffer buf = readBuffer;
+        buf.clear();
+        int start = 0, scan = 0;
+        while (true) {
+            int n = ch.read(buf);
+            int limit = buf.position();
+            for (; scan < limit; scan++) {
+                if (buf.get(scan) == '\n') {
+                    decodeLine(buf, start, scan, sink);
+                    start = scan + 1;
+                }
+            }
+            if (n < 0) {
+                decodeLine(buf, start, limit, sink);
+                return;
+            }
+            if (start == 0 && limit == buf.capacity()) {
+                // a single line larger than the window
+                ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                bigger.put(buf);
+                buf = readBuffer = bigger;
+            } else if (start > 0) {
+                buf.limit(limit).position(start);
+                buf.compact();
+                scan -= start;
+                start = 0;
+            }
+        }
+    }
+
+    private void decodeLine(ByteBuffer buf, int from, int to, Consumer<Task> sink) {
+        while (from < to && isWhitespace(buf.get(from))) from++;
+        while (to > from && isWhitespace(buf.get(to - 1))) to--;
+        if (from < to) sink.accept(decode(buf, from, to));
+    }
+
+    private Task decodeObject() {
+        skipWs();
+        expect('{');
+        long id = 0;
+        boolean hasId = false, hasDone = false;
+        boolean done = false;
+        String title = null;
+        OffsetDateTime createdAt = null;
+        LocalDate due = null;
+        skipWs();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWs();
+                expect('"');
+                int keyLen = readStringBytes();
+                skipWs();
+                expect(':');
+                skipWs();
+                if (keyIs(K_ID, keyLen)) {
+                    id = readLong();
+                    hasId = true;
+                } else if (keyIs(K_TITLE, keyLen)) {
+                    title = readNullableString();
+                } else if (keyIs(K_DONE, keyLen)) {
+                    done = readBoolean();
+                    hasDone = true;
+                } else if (keyIs(K_CREATED, keyLen)) {
+                    createdAt = readCreatedAt();
+                } else if (keyIs(K_DUE, keyLen)) {
+                    due = readDue();
+                } else {
+                    skipValue();
+                }
+                skipWs();
+                byte c = next();
+                if (c == '}') break;
+                if (c != ',') throw error("expected ',' or '}'");
+            }
+        }
+        skipWs();
+        if (pos != end) throw error("trailing data");
+        if (!hasId) throw missing("id");
+        if (title == null) throw missing("title");
+        if (!hasDone) throw missing("done");
+        if (createdAt == null) throw missing("createdAt");
+        return new Task(id, title, done, createdAt, due);
+    }
+
+    private boolean keyIs(byte[] key, int keyLen) {
+        if (key.length != keyLen) return false;
+        for (int i = 0; i < keyLen; i++) if (scratch[i] != key[i]) return false;
+        return true;
+    }
+
+    private long readLong() {
+        boolean neg = peek() == '-';
+        if (neg) pos++;
+        int start = pos;
+        long v = 0;
+        while (pos < end) {
+            int d = in.get(pos) - '0';
+            if (d < 0 || d > 9) break;
+            v = Math.addExact(Math.multiplyExact(v, 10), d);
+            pos++;
+        }
+        if (pos == start) throw error("expected a number");
+        return neg ? -v : v;
+    }
+
+    private boolean readBoolean() {
+        if (matchLiteral("true")) return true;
+        if (matchLiteral("false")) return false;
+        throw error("expected true or false");
+    }
+
+    private String readNullableString() {
+        if (matchLiteral("null")) return null;
+        expect('"');
+        int n = readStringBytes();
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private OffsetDateTime readCreatedAt() {
+        if (matchLiteral("null")) return null;
+        expect('"');
+        int n = readStringBytes();
+        OffsetDateTime t = parseOffsetDateTime(scratch, n);
+        return t != null ? t : OffsetDateTime.parse(new String(scratch, 0, n, StandardCharsets.UTF_8));
+    }
+
+    /** Lenient like the previous parser: an unreadable due date is treated as "no due date". */
+    private LocalDate readDue() {
+        if (matchLiteral("null")) return null;
+        if (peek() != '"') {
+            skipValue();
+            return null;
+        }
+        pos++;
+        int n = readStringBytes();
+        LocalDate d = parseLocalDate(scratch, 0, n);
+        if (d != null) return d;
+        try {
+            return LocalDate.parse(new String(scratch, 0, n, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a string body (opening quote already consumed) into {@link #scratch}
+     * as UTF-8, resolving escapes. Returns the number of bytes written.
+     */
+    private int readStringBytes() {
+        int n = 0;
+        while (true) {
+            if (pos >= end) throw error("unterminated string");
+            byte b = in.get(pos++);
+            if (b == '"') return n;
+            if (n + 4 > scratch.length) scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            if (b != '\\') {
+                scratch[n++] = b;
+                continue;
+            }
+            byte e = next();
+            switch (e) {
+                case '"', '\\', '/' -> scratch[n++] = e;
+                case 'b' -> scratch[n++] = '\b';
+                case 'f' -> scratch[n++] = '\f';
+                case 'n' -> scratch[n++] = '\n';
+                case 'r' -> scratch[n++] = '\r';
+                case 't' -> scratch[n++] = '\t';
+                case 'u' -> {
+                    int cp = readHex4();
+                    if (Character.isHighSurrogate((char) cp) && pos + 6 <= end
+                            && in.get(pos) == '\\' && in.get(pos + 1) == 'u') {
+                        int save = pos;
+                        pos += 2;
+                        int low = readHex4();
+                        if (Character.isLowSurrogate((char) low)) cp = Character.toCodePoint((char) cp, (char) low);
+                        else pos = save;
+                    }
+                    n = putUtf8(cp, n);
+                }
+                default -> throw error("bad escape \\" + (char) e);
+            }
+        }
+    }
+
+    private int readHex4() {
+        if (pos + 4 > end) throw error("short \\u escape");
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int h = Character.digit(in.get(pos++), 16);
+            if (h < 0) throw error("bad \\u escape");
+            v = (v << 4) | h;
+        }
+        return v;
+    }
+
+    private int putUtf8(int cp, int n) {
+        if (Character.isSurrogate((char) cp) && cp <= 0xFFFF) cp = '?'; // lone surrogate, as String.getBytes does
+        if (cp < 0x80) {
+            scratch[n++] = (byte) cp;
+        } else if (cp < 0x800) {
+            scratch[n++] = (byte) (0xC0 | (cp >> 6));
+            scratch[n++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            scratch[n++] = (byte) (0xE0 | (cp >> 12));
+            scratch[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            scratch[n++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            scratch[n++] = (byte) (0xF0 | (cp >> 18));
+            scratch[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            scratch[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            scratch[n++] = (byte) (0x80 | (cp & 0x3F));
+        }
+        return n;
+    }
+
+    private void skipValue() {
+        byte c = peek();
+        if (c == '"') {
+            pos++;
+            readStringBytes();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                byte b = next();
+                if (b == '"') readStringBytes();
+                else if (b == '{' || b == '[') depth++;
+                else if (b == '}' || b == ']') depth--;
+            } while (depth > 0);
+        } else {
+            while (pos < end) {
+                byte b = in.get(pos);
+                if (b == ',' || b == '}' || b == ']' || isWhitespace(b)) break;
+                pos++;
+            }
+        }
+    }
+
+    private boolean matchLiteral(String lit) {
+        if (pos + lit.length() > end) return false;
+        for (int i = 0; i < lit.length(); i++) if (in.get(pos + i) != lit.charAt(i)) return false;
+        pos += lit.length();
+        return true;
+    }
+
+    private void skipWs() {
+        while (pos < end && isWhitespace(in.get(pos))) pos++;
+    }
+
+    private byte peek() {
+        if (pos >= end) throw error("unexpected end of line");
+        return in.get(pos);
+    }
+
+    private byte next() {
+        if (pos >= end) throw error("unexpected end of line");
+        return in.get(pos++);
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw error("expected '" + c + "'");
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private IllegalArgumentException error(String what) {
+        return new IllegalArgumentException("Invalid JSON line (" + what + " at byte " + pos + ")");
+    }
+
+    private static IllegalArgumentException missing(String key) {
+        return new IllegalArgumentException("Missing key: \"" + key + "\"");
+    }
+
+    /** Fast path for ISO dates written by {@link #encode}; null means "let java.time parse it". */
+    static LocalDate parseLocalDate(byte[] b, int off, int n) {
+        if (n != 10 || b[off + 4] != '-' || b[off + 7] != '-') return null;
+        int y = digits(b, off, 4), m = digits(b, off + 5, 2), d = digits(b, off + 8, 2);
+        if (y < 0 || m < 0 || d < 0) return null;
+        try {
+            return LocalDate.of(y, m, d);
+        } catch (DateTimeException e) {
+            return null; // well-formed but no such day, e.g. 2025-02-30
+        }
+    }
+
+    /** Fast path for {@code yyyy-MM-ddTHH:mm[:ss[.f…]](Z|±HH:MM)}; null means "let java.time parse it". */
+    static OffsetDateTime parseOffsetDateTime(byte[] b, int n) {
+        if (n < 17 || b[10] != 'T' || b[13] != ':') return null;
+        LocalDate date = parseLocalDate(b, 0, 10);
+        int h = digits(b, 11, 2), mi = digits(b, 14, 2);
+        if (date == null || h < 0 || mi < 0) return null;
+        int p = 16, s = 0, nano = 0;
+        if (p < n && b[p] == ':') {
+            s = digits(b, p + 1, 2);
+            if (s < 0) return null;
+            p += 3;
+            if (p < n && b[p] == '.') {
+                int count = 0;
+                for (p++; p < n && b[p] >= '0' && b[p] <= '9'; p++, count++) {
+                    if (count == 9) return null;
+                    nano = nano * 10 + (b[p] - '0');
+                }
+                if (count == 0) return null;
+                for (int i = count; i < 9; i++) nano *= 10;
+            }
+        }
+        ZoneOffset offset;
+        if (p + 1 == n && b[p] == 'Z') {
+            offset = ZoneOffset.UTC;
+        } else if (p + 6 == n && (b[p] == '+' || b[p] == '-') && b[p + 3] == ':') {
+            int oh = digits(b, p + 1, 2), om = digits(b, p + 4, 2);
+            if (oh < 0 || om < 0) return null;
+            int sign = b[p] == '-' ? -1 : 1;
+            offset = ZoneOffset.ofHoursMinutes(sign * oh, sign * om);
+        } else {
+            return null;
+        }
+        return OffsetDateTime.of(date, LocalTime.of(h, mi, s, nano), offset);
+    }
+
+    private static int digits(byte[] b, int off, int count) {
+        int v = 0;
+        for (int i = off; i < off + count; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    // ---------------------------------------------------------------- encode
+
+    public String toJson(Task t) {
+        len = 0;
+        encode(t);
+        return new String(out, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /** Writes every task as one line to {@code ch}, in list order. */
+    public void encodeAll(List<Task> tasks, WritableByteChannel ch) throws IOException {
+        len = 0;
+        for (Task t : tasks) {
+            encode(t);
+            put((byte) '\n');
+            if (len >= WRITE_FLUSH) drainTo(ch);
+        }
+        drainTo(ch);
+    }
+
+    /** Appends one JSON object (no newline) to the internal buffer. */
+    void encode(Task t) {
+        String title = t.getTitle();
+        ensure(title.length() * 6 + 128);
+        putAscii("{\"id\":");
+        putLong(t.getId());
+        putAscii(",\"title\":\"");
+        putEscaped(title);
+        putAscii("\",\"done\":");
+        putAscii(t.isDone() ? "true" : "false");
+        putAscii(",\"createdAt\":\"");
+        putDateTime(t.getCreatedAt());
+        putAscii("\",\"due\":");
+        if (t.getDue() != null) {
+            put((byte) '"');
+            putDate(t.getDue());
+            put((byte) '"');
+        } else {
+            putAscii("null");
+        }
+        put((byte) '}');
+    }
+
+    private void drainTo(WritableByteChannel ch) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(out, 0, len);
+        while (bb.hasRemaining()) ch.write(bb);
+        len = 0;
+    }
+
+    private void putEscaped(String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') put((byte) '\\');
+                put((byte) c);
+            } else if (c < 0x20) {
+                put((byte) '\\');
+                switch (c) {
+                    case '\n' -> put((byte) 'n');
+                    case '\r' -> put((byte) 'r');
+                    case '\t' -> put((byte) 't');
+                    case '\b' -> put((byte) 'b');
+                    case '\f' -> put((byte) 'f');
+                    default -> {
+                        putAscii("u00");
+                        put((byte) Character.forDigit(c >> 4, 16));
+                        put((byte) Character.forDigit(c & 0xF, 16));
+                    }
+                }
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                put((byte) (0xF0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                put((byte) '?');
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /** Same text as {@link OffsetDateTime#toString()}, without the intermediate strings. */
+    private void putDateTime(OffsetDateTime t) {
+        if (t.getYear() < 0 || t.getYear() > 9999) {
+            putAscii(t.toString());
+            return;
+        }
+        putDate(t.toLocalDate());
+        put((byte) 'T');
+        putDigits(t.getHour(), 2);
+        put((byte) ':');
+        putDigits(t.getMinute(), 2);
+        int s = t.getSecond(), nano = t.getNano();
+        if (s > 0 || nano > 0) {
+            put((byte) ':');
+            putDigits(s, 2);
+            if (nano > 0) {
+                put((byte) '.');
+                if (nano % 1_000_000 == 0) putDigits(nano / 1_000_000, 3);
+                else if (nano % 1000 == 0) putDigits(nano / 1000, 6);
+                else putDigits(nano, 9);
+            }
+        }
+        putAscii(t.getOffset().getId());
+    }
+
+    private void putDate(LocalDate d) {
+        int y = d.getYear();
+        if (y < 0 || y > 9999) {
+            putAscii(d.toString());
+            return;
+        }
+        putDigits(y, 4);
+        put((byte) '-');
+        putDigits(d.getMonthValue(), 2);
+        put((byte) '-');
+        putDigits(d.getDayOfMonth(), 2);
+    }
+
+    private void putDigits(int v, int width) {
+        for (int i = len + width - 1; i >= len; i--) {
+            out[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        len += width;
+    }
+
+    private void putLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            putAscii(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            put((byte) '-');
+            v = -v;
+        }
+        int width = 1;
+        for (long x = v; x >= 10; x /= 10) width++;
+        for (int i = len + width - 1; i >= len; i--) {
+            out[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        len += width;
+    }
+
+    private void putAscii(String s) {
+        for (int i = 0; i < s.length(); i++) out[len++] = (byte) s.charAt(i);
+    }
+
+    private void put(byte b) {
+        out[len++] = b;
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > out.length) out = Arrays.copyOf(out, Math.max(out.length * 2, len + extra));
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,198 @@
+package be.todo.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Delivers {@link TaskEvent}s to subscribers, each through its own bounded
+ * queue drained by its own virtual thread, so a slow subscriber delays nobody
+ * but itself. What happens when a queue is full is the subscriber's
+ * {@link Backpressure} choice.
+ * <p>
+ * Publishing with no subscribers costs one volatile read; callers can check
+ * {@link #hasSubscribers()} before building an event.
+ */
+public final class EventBus implements AutoCloseable {
+    public enum Backpressure {
+        /** Discard the new event; {@link Subscription#dropped()} counts them. */
+        DROP,
+        /**
+         * Make the publisher wait for room. The mutation that published waits too,
+         * so the handler must not change tasks itself.
+         */
+        BLOCK,
+        /**
+         * Replace a queued event of the same type about the same task by the new
+         * one, keeping its place in the queue; a before/after pair keeps the
+         * older before. Events of other types are never merged away, so an add
+         * still arrives ahead of a later due change. When the queue is full, the
+         * oldest event is dropped.
+         */
+        COALESCE
+    }
+
+    public interface Subscription extends AutoCloseable {
+        /** Events this subscriber lost to a full queue. */
+        long dropped();
+
+        /** Stops delivery once the events already queued have been handled. */
+        @Override
+        void close();
+    }
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * Calls {@code handler} with every event published from now on, in order,
+     * on a virtual thread of its own.
+     *
+     * @param capacity events that may wait for the handler before {@code policy} applies
+     */
+    public Subscription subscribe(Consumer<? super TaskEvent> handler, int capacity, Backpressure policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        Subscriber s = new Subscriber(handler, capacity, policy);
+        s.thread = Thread.ofVirtual().name("todo-events").unstarted(s::deliver);
+        subscribers.add(s);
+        s.thread.start();
+        return s;
+    }
+
+    public void publish(TaskEvent event) {
+        for (Subscriber s : subscribers) s.offer(event);
+    }
+
+    /** Closes every subscription and waits briefly for queued events to be handled. */
+    @Override
+    public void close() {
+        List<Subscriber> all = List.copyOf(subscribers);
+        for (Subscriber s : all) s.close();
+        for (Subscriber s : all) {
+            try {
+                s.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private final class Subscriber implements Subscription {
+        private final Consumer<? super TaskEvent> handler;
+        private final int capacity;
+        private final Backpressure policy;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        /** Keyed by task id and event type under COALESCE, otherwise by a sequence number so nothing merges. */
+        private final LinkedHashMap<Object, TaskEvent> queue = new LinkedHashMap<>();
+        private final AtomicLong dropped = new AtomicLong();
+        private long seq;
+        private boolean closed;
+        private Thread thread;
+
+        Subscriber(Consumer<? super TaskEvent> handler, int capacity, Backpressure policy) {
+            this.handler = handler;
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+
+        void offer(TaskEvent event) {
+            lock.lock();
+            try {
+                if (closed) return;
+                boolean coalesce = policy == Backpressure.COALESCE && event.taskId() >= 0;
+                Object key = coalesce ? new Key(event.taskId(), event.getClass()) : Long.valueOf(++seq);
+                if (coalesce && queue.computeIfPresent(key, (k, queued) -> merge(queued, event)) != null) return;
+                while (queue.size() >= capacity) {
+                    switch (policy) {
+                        case DROP -> {
+                            dropped.incrementAndGet();
+                            return;
+                        }
+                        case COALESCE -> {
+                            Iterator<Object> oldest = queue.keySet().iterator();
+                            oldest.next();
+                            oldest.remove();
+                            dropped.incrementAndGet();
+                        }
+                        case BLOCK -> {
+                            notFull.awaitUninterruptibly();
+                            if (closed) return;
+                        }
+                    }
+                }
+                queue.put(key, event);
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void deliver() {
+            while (true) {
+                TaskEvent event;
+                lock.lock();
+                try {
+                    while (queue.isEmpty()) {
+                        if (closed) return;
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    Iterator<Map.Entry<Object, TaskEvent>> first = queue.entrySet().iterator();
+                    event = first.next().getValue();
+                    first.remove();
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    handler.accept(event);
+                } catch (RuntimeException e) {
+                    System.err.println("Event subscriber failed on " + event + ": " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public long dropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public void close() {
+            subscribers.remove(this);
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private record Key(long taskId, Class<?> type) { }
+
+    /** The event that stands for {@code queued} followed by {@code next} of the same type and task. */
+    private static TaskEvent merge(TaskEvent queued, TaskEvent next) {
+        if (queued instanceof TaskEvent.DueChanged d && next instanceof TaskEvent.DueChanged n) {
+            return new TaskEvent.DueChanged(d.before(), n.after());
+        }
+        if (queued instanceof TaskEvent.TaskUpdated u && next instanceof TaskEvent.TaskUpdated n) {
+            return new TaskEvent.TaskUpdated(u.before(), n.after());
+        }
+        return next;
+    }
+}
@@ -0,0 +1,154 @@
+package be.todo.service;
+
+import be.todo.model.Task;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reminds of pending tasks as they fall due. At every local midnight the sink
+ * gets the tasks due that day and those still overdue; a task that falls due
+ * later in the day, because it was added, re-dated or reopened, is passed on as
+ * soon as that happens. No task is reminded of twice in one day.
+ * <p>
+ * Nothing is scanned: the day's tasks come from the store's due-date index,
+ * which every change keeps current, so a tick costs the number of tasks it
+ * reports, and a change costs one lookup. Changes arrive as {@link TaskEvent}s
+ * coalesced per task and type. The sink is called on the scheduler's timer
+ * thread, one call at a time and never while the scheduler's lock is held, so
+ * it may take its time or call back into the scheduler's service.
+ */
+public final class ReminderScheduler implements AutoCloseable {
+    /** Longest wait between checks of the date, in case the clock is changed or the machine sleeps. */
+    static final Duration MAX_WAIT = Duration.ofHours(1);
+
+    /**
+     * @param due     pending tasks due on {@code day}
+     * @param overdue pending tasks due before {@code day}, earliest first
+     */
+    public record Reminder(LocalDate day, List<Task> due, List<Task> overdue) {
+        /** One line for a notification, e.g. {@code "2 tasks due today: #3 buy milk, #7 call Bob; 1 task overdue: #1 taxes"}. */
+        public String summary() {
+            StringBuilder sb = new StringBuilder();
+            append(sb, due, "due today");
+            append(sb, overdue, "overdue");
+            return sb.toString();
+        }
+
+        private static void append(StringBuilder sb, List<Task> tasks, String what) {
+            if (tasks.isEmpty()) return;
+            if (!sb.isEmpty()) sb.append("; ");
+            sb.append(tasks.size()).append(tasks.size() == 1 ? " task " : " tasks ").append(what).append(": ");
+            int shown = Math.min(tasks.size(), 3);
+            for (int i = 0; i < shown; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append('#').append(tasks.get(i).getId()).append(' ').append(tasks.get(i).getTitle());
+            }
+            if (tasks.size() > shown) sb.append(", +").append(tasks.size() - shown).append(" more");
+        }
+    }
+
+    private final TodoService service;
+    private final Clock clock;
+    private final Consumer<Reminder> sink;
+    private final ScheduledExecutorService timer;
+    private final EventBus.Subscription events;
+    /** Tasks reminded of on {@link #day}. */
+    private final Set<Long> reminded = new HashSet<>();
+    private LocalDate day;
+
+    public ReminderScheduler(TodoService service, Consumer<Reminder> sink) {
+        this(service, Clock.systemDefaultZone(), sink);
+    }
+
+    /** Starts at once: tasks due today or overdue are reported straight away. */
+    public ReminderScheduler(TodoService service, Clock clock, Consumer<Reminder> sink) {
+        this.service = service;
+        this.clock = clock;
+        this.sink = sink;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "todo-reminders");
+            t.setDaemon(true);
+            return t;
+        });
+        // subscribed before the first tick, so no change falls between the two
+        this.events = service.subscribe(this::changed, 1024, EventBus.Backpressure.COALESCE);
+        timer.execute(this::tick);
+    }
+
+    @Override
+    public void close() {
+        events.close();
+        timer.shutdownNow();
+    }
+
+    private void tick() {
+        try {
+            LocalDate today = LocalDate.now(clock);
+            Reminder reminder = null;
+            synchronized (this) {
+                if (!today.equals(day)) {
+                    day = today;
+                    reminded.clear();
+                    List<Task> due = service.listDue(today, today, TodoService.Status.PENDING);
+                    List<Task> overdue = service.listPendingDueBefore(today);
+                    for (Task t : due) reminded.add(t.getId());
+                    for (Task t : overdue) reminded.add(t.getId());
+                    if (!due.isEmpty() || !overdue.isEmpty()) reminder = new Reminder(today, due, overdue);
+                }
+            }
+            if (reminder != null) sink.accept(reminder);
+        } catch (RuntimeException e) {
+            System.err.println("Reminder check failed: " + e.getMessage());
+        } finally {
+            if (!timer.isShutdown()) timer.schedule(this::tick, untilNextCheck().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Events are coalesced, so the task is looked up as it is now rather than taken from the event. */
+    private void changed(TaskEvent event) {
+        if (event.taskId() < 0) return; // clearing done tasks makes nothing due
+        Optional<Task> current = service.getById(event.taskId());
+        Reminder reminder;
+        synchronized (this) {
+            if (day == null || current.isEmpty()) return;
+            Task t = current.get();
+            if (t.isDone() || t.getDue() == null || t.getDue().isAfter(day) || !reminded.add(t.getId())) return;
+            boolean overdue = t.getDue().isBefore(day);
+            reminder = new Reminder(day, overdue ? List.of() : List.of(t), overdue ? List.of(t) : List.of());
+        }
+        try {
+            // handed to the timer thread, so that the sink is never called by two threads at once
+            timer.execute(() -> {
+                try {
+                    sink.accept(reminder);
+                } catch (RuntimeException e) {
+                    System.err.println("Reminder failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile
+        }
+    }
+
+    /** Measured from the day last checked, so a midnight that passed while checking is not missed. */
+    private synchronized Duration untilNextCheck() {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        LocalDate checked = day != null ? day : now.toLocalDate();
+        Duration wait = Duration.between(now, checked.plusDays(1).atStartOfDay(now.getZone()));
+        if (wait.isNegative()) return Duration.ZERO;
+        if (wait.compareTo(MAX_WAIT) > 0) return MAX_WAIT;
+        return wait.plusMillis(1);
+    }
+}
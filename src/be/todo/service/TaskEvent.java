@@ -0,0 +1,43 @@
+package be.todo.service;
+
+import be.todo.model.Task;
+
+import java.util.List;
+
+/**
+ * Something that happened to the tasks of a {@link TodoService}, published on its
+ * {@link EventBus}. Events about one task arrive in the order it changed, except
+ * when several threads changed it at the same moment.
+ */
+public sealed interface TaskEvent {
+
+    /** The task this event is about, or -1 for an event about several tasks. */
+    long taskId();
+
+    record TaskAdded(Task task) implements TaskEvent {
+        public long taskId() { return task.getId(); }
+    }
+
+    record TaskCompleted(Task task) implements TaskEvent {
+        public long taskId() { return task.getId(); }
+    }
+
+    /** {@code after.getDue()} is null when the due date was cleared. */
+    record DueChanged(Task before, Task after) implements TaskEvent {
+        public long taskId() { return after.getId(); }
+    }
+
+    record TaskRemoved(Task task) implements TaskEvent {
+        public long taskId() { return task.getId(); }
+    }
+
+    /** All done tasks were removed in one go; {@code removed} lists them. */
+    record DoneCleared(List<Task> removed) implements TaskEvent {
+        public long taskId() { return -1; }
+    }
+
+    /** Any other change, e.g. one made by another process that reopened or renamed a task. */
+    record TaskUpdated(Task before, Task after) implements TaskEvent {
+        public long taskId() { return after.getId(); }
+    }
+}
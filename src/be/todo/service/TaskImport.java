@@ -0,0 +1,131 @@
+package be.todo.service;
+
+import be.todo.model.Task;
+import be.todo.model.TaskCodec;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads tasks to import as {@link TodoService.Op.Add} operations, handing them
+ * out in chunks so the file is never held in memory as a whole.
+ * <p>
+ * JSON-lines files keep every field except the id. CSV files have one task per
+ * line as {@code title[,due[,done]]}, with an optional header line starting
+ * with {@code title}; fields may be quoted with {@code "} and {@code ""} inside
+ * quotes stands for a quote. A quoted field may span lines, so a task then
+ * takes up more than one.
+ */
+final class TaskImport {
+    static final int CHUNK = 10_000;
+
+    private final Consumer<List<TodoService.Op>> sink;
+    private List<TodoService.Op> chunk = new ArrayList<>(CHUNK);
+
+    private TaskImport(Consumer<List<TodoService.Op>> sink) {
+        this.sink = sink;
+    }
+
+    static void read(Path source, Consumer<List<TodoService.Op>> sink) {
+        TaskImport in = new TaskImport(sink);
+        try {
+            if (source.getFileName().toString().toLowerCase().endsWith(".csv")) in.readCsv(source);
+            else in.readJsonLines(source);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to import tasks: " + source, e);
+        }
+        in.flush();
+    }
+
+    private void readJsonLines(Path source) throws IOException {
+        try (FileChannel ch = FileChannel.open(source)) {
+            new TaskCodec().decodeLines(ch, this::add);
+        }
+    }
+
+    private void readCsv(Path source) throws IOException {
+        try (BufferedReader r = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = r.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                int start = lineNo;
+                while (quotesOpen(line)) {
+                    String next = r.readLine();
+                    if (next == null) throw new IllegalArgumentException("Unterminated quoted field on line " + start);
+                    lineNo++;
+                    line += "\n" + next;
+                }
+                List<String> fields = splitCsv(line);
+                if (start == 1 && fields.get(0).trim().equalsIgnoreCase("title")) continue;
+                String title = fields.get(0);
+                LocalDate due = null;
+                boolean done = false;
+                try {
+                    if (fields.size() > 1 && !fields.get(1).isBlank()) due = LocalDate.parse(fields.get(1).trim());
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("Bad due date on line " + start + ": " + fields.get(1));
+                }
+                if (fields.size() > 2) {
+                    String d = fields.get(2).trim().toLowerCase();
+                    done = d.equals("true") || d.equals("x") || d.equals("1") || d.equals("yes");
+                }
+                add(new TodoService.Op.Add(title, due, done, null));
+            }
+        }
+    }
+
+    private void add(Task t) {
+        add(new TodoService.Op.Add(t.getTitle(), t.getDue(), t.isDone(), t.getCreatedAt()));
+    }
+
+    private void add(TodoService.Op op) {
+        chunk.add(op);
+        if (chunk.size() == CHUNK) flush();
+    }
+
+    private void flush() {
+        if (chunk.isEmpty()) return;
+        sink.accept(chunk);
+        chunk = new ArrayList<>(CHUNK);
+    }
+
+    /** True if {@code line} ends inside a quoted field: a doubled quote counts twice, so it never changes the parity. */
+    private static boolean quotesOpen(String line) {
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) if (line.charAt(i) == '"') quotes++;
+        return quotes % 2 == 1;
+    }
+
+    static List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c != '"') cur.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') { cur.append('"'); i++; }
+                else inQuotes = false;
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+}
@@ -1,104 +1,511 @@
 package be.todo.service;
 
+import be.todo.metrics.Histogram;
+import be.todo.metrics.Metrics;
 import be.todo.model.Task;
+import be.todo.storage.FileWatcher;
 import be.todo.storage.TaskRepository;
+import be.todo.storage.TaskStore;
 
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Every public operation records its latency in a {@link Metrics#global()}
+ * timer named {@code service.<method>}. The {@code stream} methods are not
+ * timed: their cost lies in consuming the stream.
+ */
+public class TodoService implements AutoCloseable {
+    private static final Histogram ADD = Metrics.global().timer("service.add");
+    private static final Histogram LIST_ALL = Metrics.global().timer("service.listAll");
+    private static final Histogram LIST_PENDING = Metrics.global().timer("service.listPending");
+    private static final Histogram LIST_DONE = Metrics.global().timer("service.listDone");
+    private static final Histogram LIST_PAGE = Metrics.global().timer("service.listPage");
+    private static final Histogram LIST_DUE = Metrics.global().timer("service.listDue");
+    private static final Histogram LIST_DUE_BEFORE = Metrics.global().timer("service.listPendingDueBefore");
+    private static final Histogram SEARCH = Metrics.global().timer("service.search");
+    private static final Histogram GET = Metrics.global().timer("service.getById");
+    private static final Histogram MARK_DONE = Metrics.global().timer("service.markDone");
+    private static final Histogram REMOVE = Metrics.global().timer("service.remove");
+    private static final Histogram UPDATE_DUE = Metrics.global().timer("service.updateDue");
+    private static final Histogram CLEAR_DONE = Metrics.global().timer("service.clearDone");
+    private static final Histogram BATCH = Metrics.global().timer("service.batch");
+    private static final Histogram IMPORT = Metrics.global().timer("service.importFile");
+    private static final Histogram STATS = Metrics.global().timer("service.stats");
+    private static final Histogram EXPORT = Metrics.global().timer("service.exportJson");
+    private static final Histogram RELOAD = Metrics.global().timer("service.reload");
+    private static final Histogram FLUSH = Metrics.global().timer("service.flush");
+    private static final Histogram UNDO = Metrics.global().timer("service.undo");
+    private static final Histogram REDO = Metrics.global().timer("service.redo");
+
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    /** How long the data file must be left alone before an external change is reloaded. */
+    public static final Duration WATCH_QUIET_PERIOD = Duration.ofMillis(200);
+
+    public static final int DEFAULT_UNDO_STEPS = 100;
+    /** Enough for a step that removes a few hundred thousand tasks. */
+    public static final long DEFAULT_UNDO_BYTES = 64L << 20;
 
-public class TodoService {
     private final TaskRepository repo;
+    private final TaskStore store;
+    private final EventBus events = new EventBus();
+    private final List<Consumer<List<TaskRepository.Change>>> externalListeners = new CopyOnWriteArrayList<>();
+    private FileWatcher watcher;
+    private volatile UndoJournal journal;
 
     public TodoService(TaskRepository repo) {
+        this(repo, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /** @param flushInterval how often changes are written back; zero writes every change through */
+    public TodoService(TaskRepository repo, Duration flushInterval) {
         this.repo = repo;
+        this.store = new TaskStore(repo, flushInterval);
     }
 
     public Task add(String title, LocalDate due) {
-        Task t = repo.create(title);
-        if (due != null) {
-            updateDue(t.getId(), due);
-            return getById(t.getId()).orElse(t);
-        }
-        return t;
+        return timed(ADD, () -> added(store.create(title, due)));
     }
 
-    public List<Task> listAll() { return repo.findAll(); }
+    public List<Task> listAll() {
+        return timed(LIST_ALL, store::all);
+    }
 
     public List<Task> listPending() {
-        List<Task> out = new ArrayList<>();
-        for (Task t : repo.findAll()) if (!t.isDone()) out.add(t);
-        return out;
+        return timed(LIST_PENDING, store::pending);
     }
 
     public List<Task> listDone() {
-        List<Task> out = new ArrayList<>();
-        for (Task t : repo.findAll()) if (t.isDone()) out.add(t);
-        return out;
+        return timed(LIST_DONE, store::done);
+    }
+
+    /** Tasks in {@code status} in id order, read lazily from the resident store without copying them. */
+    public Stream<Task> stream(Status status) {
+        return stream(status, 0);
+    }
+
+    /** Like {@link #stream(Status)}, starting after the task with id {@code afterId}. */
+    public Stream<Task> stream(Status status, long afterId) {
+        return store.stream(status != Status.DONE, status != Status.PENDING, afterId);
+    }
+
+    /**
+     * At most {@code limit} tasks in {@code status} with an id above {@code afterId}.
+     * Pass the last id of one page as {@code afterId} to get the next one.
+     */
+    public List<Task> listPage(Status status, long afterId, int limit) {
+        return timed(LIST_PAGE, () -> stream(status, afterId).limit(Math.max(limit, 0)).toList());
+    }
+
+    /**
+     * Tasks in {@code status} due in {@code [from, to]}, earliest first; a null
+     * bound is open. Answered from a due-date index, so the cost depends on the
+     * number of matches rather than on the number of tasks.
+     */
+    public List<Task> listDue(LocalDate from, LocalDate to, Status status) {
+        return timed(LIST_DUE, () -> store.dueBetween(from, dayAfter(to), status != Status.DONE, status != Status.PENDING));
+    }
+
+    /** Like {@link #listDue}, read lazily from the due-date index without copying the matches. */
+    public Stream<Task> streamDue(LocalDate from, LocalDate to, Status status) {
+        return store.streamDue(from, dayAfter(to), status != Status.DONE, status != Status.PENDING);
+    }
+
+    /** The exclusive end of a range ending on {@code to}; open (null) for an open end or the last day there is. */
+    private static LocalDate dayAfter(LocalDate to) {
+        return to == null || to.equals(LocalDate.MAX) ? null : to.plusDays(1);
+    }
+
+    /** Pending tasks due before {@code date}. */
+    public List<Task> listPendingDueBefore(LocalDate date) {
+        return timed(LIST_DUE_BEFORE, () -> store.dueBetween(null, date, true, false));
+    }
+
+    /** Pending tasks whose due date has passed. */
+    public List<Task> listOverdue() {
+        return listPendingDueBefore(LocalDate.now());
+    }
+
+    /** Pending tasks due from today up to and including Sunday. */
+    public List<Task> listDueThisWeek() {
+        LocalDate today = LocalDate.now();
+        return listDue(today, today.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY)), Status.PENDING);
+    }
+
+    /**
+     * One page of the tasks whose titles match {@code query}, best match first.
+     * Terms are ANDed and match the start of title words; {@code OR} separates
+     * alternatives, e.g. {@code "buy milk OR groceries"}.
+     */
+    public SearchResult search(String query, int offset, int limit) {
+        return timed(SEARCH, () -> {
+            List<Task> hits = store.search(query);
+            int from = Math.min(Math.max(offset, 0), hits.size());
+            int to = (int) Math.min((long) from + Math.max(limit, 0), hits.size());
+            return new SearchResult(List.copyOf(hits.subList(from, to)), hits.size());
+        });
+    }
+
+    /** Grows with every change to the tasks; equal values mean nothing changed in between. */
+    public long changeCount() {
+        return store.changeCount();
     }
 
     public Optional<Task> getById(long id) {
-        return repo.findAll().stream().filter(t -> t.getId() == id).findFirst();
+        return timed(GET, () -> store.get(id));
     }
 
     public boolean markDone(long id) {
-        List<Task> all = repo.findAll();
-        boolean changed = false;
-        List<Task> updated = new ArrayList<>(all.size());
-        for (Task t : all) {
-            if (t.getId() == id && !t.isDone()) {
-                updated.add(t.withDone(true));
-                changed = true;
-            } else {
-                updated.add(t);
-            }
-        }
-        if (changed) repo.saveAll(updated);
-        return changed;
+        return timed(MARK_DONE, () -> done(id));
     }
 
     public boolean remove(long id) {
-        List<Task> all = repo.findAll();
-        int before = all.size();
-        all.removeIf(t -> t.getId() == id);
-        if (all.size() < before) {
-            repo.saveAll(all);
-            return true;
-        }
-        return false;
+        return timed(REMOVE, () -> removeTask(id));
     }
 
     public boolean updateDue(long id, LocalDate due) {
-        List<Task> all = repo.findAll();
-        boolean changed = false;
-        List<Task> updated = new ArrayList<>(all.size());
-        for (Task t : all) {
-            if (t.getId() == id) {
-                updated.add(t.withDue(due));
-                changed = true;
-            } else {
-                updated.add(t);
-            }
-        }
-        if (changed) repo.saveAll(updated);
-        return changed;
+        return timed(UPDATE_DUE, () -> setDue(id, due));
     }
 
     public int clearDone() {
-        List<Task> all = repo.findAll();
-        int before = all.size();
-        all.removeIf(Task::isDone);
-        int removed = before - all.size();
-        if (removed > 0) repo.saveAll(all);
-        return removed;
+        return timed(CLEAR_DONE, () -> {
+            if (!events.hasSubscribers() && journal == null) return store.deleteIf(Task::isDone);
+            return step("clear-done", () -> {
+                List<Task> removed = new ArrayList<>();
+                int count = store.deleteIf(Task::isDone, removed::add);
+                for (Task t : removed) journal("clear-done", t, null);
+                if (count > 0 && events.hasSubscribers()) events.publish(new TaskEvent.DoneCleared(removed));
+                return count;
+            });
+        });
+    }
+
+    /**
+     * Applies {@code ops} in order against the resident tasks and persists them
+     * together, instead of once per operation; only an explicit flush from another
+     * thread meanwhile, as on {@link #close} or {@link #reload}, writes part of them.
+     * Operations on a task that does not exist, or that would not change it, are
+     * skipped rather than failing the batch.
+     * The batch is undone as one step.
+     */
+    public BatchResult batch(List<? extends Op> ops) {
+        return timed(BATCH, () -> step("batch", () -> applyBatch(ops)));
+    }
+
+    private BatchResult applyBatch(List<? extends Op> ops) {
+        return store.batch(() -> {
+            List<Task> added = new ArrayList<>();
+            int changed = 0;
+            for (Op op : ops) {
+                switch (op) {
+                    case Op.Add a -> added.add(added(store.create(a.title(), a.done(),
+                            a.createdAt() != null ? a.createdAt() : OffsetDateTime.now(), a.due())));
+                    case Op.Done d -> { if (done(d.id())) changed++; }
+                    case Op.Remove r -> { if (removeTask(r.id())) changed++; }
+                    case Op.Due d -> { if (setDue(d.id(), d.due())) changed++; }
+                }
+            }
+            return new BatchResult(added, changed, ops.size() - added.size() - changed);
+        });
+    }
+
+    /**
+     * Adds every task in {@code source} (JSON-lines, or CSV when the name ends in
+     * {@code .csv}) under new ids. The file is streamed in batches of
+     * {@value TaskImport#CHUNK} tasks and everything is persisted once at the end.
+     * The import is undone as one step, unless it is too large to keep.
+     *
+     * @param progress called with the running count after every batch
+     * @return the number of tasks added
+     */
+    public int importFile(Path source, IntConsumer progress) {
+        return timed(IMPORT, () -> step("import " + source.getFileName(), () -> store.batch(() -> {
+            int[] count = new int[1];
+            TaskImport.read(source, chunk -> {
+                count[0] += applyBatch(chunk).added().size();
+                progress.accept(count[0]);
+            });
+            return count[0];
+        })));
     }
 
+    /** Counts kept up to date on every change, so this costs the same whatever the number of tasks. */
     public Stats stats() {
-        int total = repo.findAll().size();
-        int done = listDone().size();
-        return new Stats(total, done, total - done);
+        return timed(STATS, () -> {
+            LocalDate today = LocalDate.now();
+            int total = store.size();
+            int done = store.doneCount();
+            return new Stats(total, done, total - done, store.pendingDueBefore(today), store.pendingDueOn(today));
+        });
+    }
+
+    /** Writes all tasks to {@code target} as JSON-lines and returns how many were written. */
+    public int exportJson(Path target) {
+        return timed(EXPORT, () -> {
+            List<Task> all = store.all();
+            TaskRepository.exportJson(all, target);
+            return all.size();
+        });
+    }
+
+    /**
+     * Keeps a history of up to {@code maxSteps} changes, and {@code maxBytes} of
+     * them, for {@link #undo} and {@link #redo}. The history is also written to
+     * {@code <file>.undo}, so it carries over between runs and is shared with
+     * other processes using the same file. Changes other processes made are
+     * undone there, not here.
+     */
+    public synchronized void enableUndo(int maxSteps, long maxBytes) {
+        if (journal != null) return;
+        Path file = repo.getFile();
+        UndoJournal j = new UndoJournal(file.resolveSibling(file.getFileName() + ".undo"), maxSteps, maxBytes);
+        // steps are written with the changes they record rather than on every change
+        store.afterFlush(j::drain);
+        journal = j;
+    }
+
+    /**
+     * Reverts the newest change that has not been undone, replaying only the
+     * tasks it touched. Changes other processes made are taken in first; a task
+     * changed again since is left as it is. If that leaves nothing to put back,
+     * the change stays the newest one.
+     *
+     * @return what was undone, or empty if there is nothing to undo
+     */
+    public Optional<UndoResult> undo() {
+        return timed(UNDO, () -> {
+            UndoJournal j = journal;
+            if (j == null) return Optional.empty();
+            announce(store.reload());
+            return j.undo(step -> replay(step, true));
+        });
+    }
+
+    /** Makes the newest undone change again; see {@link #undo}. */
+    public Optional<UndoResult> redo() {
+        return timed(REDO, () -> {
+            UndoJournal j = journal;
+            if (j == null) return Optional.empty();
+            announce(store.reload());
+            return j.redo(step -> replay(step, false));
+        });
+    }
+
+    /**
+     * Calls {@code listener} with the tasks another process added, changed or
+     * removed, after they have been taken into this service. Watching the data
+     * file starts with the first listener.
+     */
+    public synchronized void onExternalChange(Consumer<List<TaskRepository.Change>> listener) {
+        externalListeners.add(listener);
+        if (watcher == null) watcher = new FileWatcher(repo.getFile(), WATCH_QUIET_PERIOD, this::reload);
+    }
+
+    /** Takes in changes other processes made to the data file and tells the listeners and subscribers about them. */
+    public List<TaskRepository.Change> reload() {
+        return announce(timed(RELOAD, store::reload));
+    }
+
+    /** Tells the listeners and subscribers about {@code changes} taken in from other processes. */
+    private List<TaskRepository.Change> announce(List<TaskRepository.Change> changes) {
+        if (changes.isEmpty()) return changes;
+        externalListeners.forEach(l -> l.accept(changes));
+        if (events.hasSubscribers()) {
+            for (TaskRepository.Change c : changes) publishChange(c.before(), c.after());
+        }
+        return changes;
+    }
+
+    /**
+     * Delivers every event published from now on to {@code handler}, on a virtual
+     * thread of its own; see {@link EventBus.Backpressure} for what happens when it
+     * falls {@code capacity} events behind. Events are published after the change
+     * they describe, without a lock, so two threads changing the same task at once
+     * may publish in the opposite order; {@link #getById} has the task as it is.
+     */
+    public EventBus.Subscription subscribe(Consumer<? super TaskEvent> handler, int capacity, EventBus.Backpressure policy) {
+        return events.subscribe(handler, capacity, policy);
+    }
+
+    /** Writes outstanding changes to disk. */
+    public void flush() {
+        timed(FLUSH, () -> {
+            store.flush();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (watcher != null) watcher.close();
+        }
+        try {
+            store.close();
+        } finally {
+            UndoJournal j = journal;
+            if (j != null) j.close();
+            events.close();
+        }
+    }
+
+    // the untimed operations behind the public ones, for applyBatch to call without timing each op again
+
+    private boolean done(long id) {
+        return update(id, t -> t.isDone() ? t : t.withDone(true), (before, after) -> new TaskEvent.TaskCompleted(after),
+                "done #" + id);
+    }
+
+    private boolean removeTask(long id) {
+        Task removed = store.remove(id);
+        if (removed == null) return false;
+        journal("remove #" + id, removed, null);
+        if (events.hasSubscribers()) events.publish(new TaskEvent.TaskRemoved(removed));
+        return true;
+    }
+
+    private boolean setDue(long id, LocalDate due) {
+        return update(id, t -> Objects.equals(t.getDue(), due) ? t : t.withDue(due), TaskEvent.DueChanged::new,
+                "due #" + id);
+    }
+
+    /** Runs {@code body} and records how long it took in {@code timer}. */
+    private static <T> T timed(Histogram timer, Supplier<T> body) {
+        long start = System.nanoTime();
+        try {
+            return body.get();
+        } finally {
+            timer.recordSince(start);
+        }
+    }
+
+    private Task added(Task t) {
+        journal("add #" + t.getId(), null, t);
+        if (events.hasSubscribers()) events.publish(new TaskEvent.TaskAdded(t));
+        return t;
+    }
+
+    /**
+     * Runs a store update, then journals the change under {@code label} and
+     * publishes the event {@code event} makes of it, if there was one. Both happen
+     * after the compare-and-set, so concurrent changes to one task may be
+     * journalled and published out of order (see {@link #subscribe}).
+     */
+    private boolean update(long id, UnaryOperator<Task> fn, BiFunction<Task, Task, TaskEvent> event, String label) {
+        if (!events.hasSubscribers() && journal == null) return store.update(id, fn);
+        // fn runs again when another thread got in first; the last run is the change that was made
+        Task[] applied = new Task[2];
+        boolean changed = store.update(id, t -> {
+            Task next = fn.apply(t);
+            applied[0] = t;
+            applied[1] = next;
+            return next;
+        });
+        if (!changed) return false;
+        journal(label, applied[0], applied[1]);
+        if (events.hasSubscribers()) events.publish(event.apply(applied[0], applied[1]));
+        return true;
+    }
+
+    private void journal(String label, Task before, Task after) {
+        UndoJournal j = journal;
+        if (j != null) j.record(label, before, after);
+    }
+
+    /** Runs {@code body} as one undo step, so that everything it changes is undone together. */
+    private <T> T step(String label, Supplier<T> body) {
+        UndoJournal j = journal;
+        return j != null ? j.step(label, body) : body.get();
+    }
+
+    /**
+     * Puts back the tasks of {@code step} as they were before it ({@code undo})
+     * or after it, in one store batch. A task that no longer matches the other
+     * side of the step was changed since and is skipped.
+     */
+    private UndoResult replay(UndoJournal.Step step, boolean undo) {
+        return store.batch(() -> {
+            List<TaskRepository.Change> changes = step.changes();
+            int replayed = 0;
+            for (int i = 0; i < changes.size(); i++) {
+                TaskRepository.Change c = changes.get(undo ? changes.size() - 1 - i : i);
+                Task expected = undo ? c.after() : c.before();
+                Task target = undo ? c.before() : c.after();
+                Task current = store.get(c.id()).orElse(null);
+                if (!UndoJournal.sameFields(current, expected)) continue;
+                if (target == null) store.remove(c.id());
+                else store.put(target);
+                replayed++;
+                if (events.hasSubscribers()) publishChange(current, target);
+            }
+            return new UndoResult(step.label(), replayed, changes.size() - replayed);
+        });
+    }
+
+    private void publishChange(Task before, Task after) {
+        if (before == null) {
+            events.publish(new TaskEvent.TaskAdded(after));
+        } else if (after == null) {
+            events.publish(new TaskEvent.TaskRemoved(before));
+        } else {
+            boolean completed = !before.isDone() && after.isDone();
+            boolean redated = !Objects.equals(before.getDue(), after.getDue());
+            boolean other = (before.isDone() && !after.isDone()) || !before.getTitle().equals(after.getTitle());
+            if (completed) events.publish(new TaskEvent.TaskCompleted(after));
+            if (redated) events.publish(new TaskEvent.DueChanged(before, after));
+            if (other || (!completed && !redated)) events.publish(new TaskEvent.TaskUpdated(before, after));
+        }
+    }
+
+    /**
+     * @param overdue  pending tasks whose due date has passed
+     * @param dueToday pending tasks due today
+     */
+    public record Stats(int total, int done, int pending, int overdue, int dueToday) { }
+
+    public enum Status { ALL, PENDING, DONE }
+
+    /** @param total number of matches across all pages */
+    public record SearchResult(List<Task> tasks, int total) { }
+
+    /**
+     * @param label   the change undone or redone, e.g. {@code "remove #12"} or {@code "clear-done"}
+     * @param tasks   tasks put back
+     * @param skipped tasks left alone because they were changed again since
+     */
+    public record UndoResult(String label, int tasks, int skipped) { }
+
+    /** One change in a {@link #batch}. */
+    public sealed interface Op {
+        /** Adds a task; a null {@code createdAt} means now. */
+        record Add(String title, LocalDate due, boolean done, OffsetDateTime createdAt) implements Op {
+            public Add(String title, LocalDate due) { this(title, due, false, null); }
+        }
+        record Done(long id) implements Op { }
+        record Remove(long id) implements Op { }
+        record Due(long id, LocalDate due) implements Op { }
     }
 
-    public record Stats(int total, int done, int pending) { }
+    /**
+     * @param added   tasks created by {@link Op.Add}, in order
+     * @param changed other operations that changed a task
+     * @param skipped operations whose task did not exist or was already in that state
+     */
+    public record BatchResult(List<Task> added, int changed, int skipped) { }
 }
@@ -0,0 +1,407 @@
+package be.todo.service;
+
+import be.todo.model.Task;
+import be.todo.model.TaskCodec;
+import be.todo.storage.TaskRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Undo and redo history of the changes made through a {@link TodoService}. A
+ * step holds each task it touched as it was before and after, so undoing or
+ * redoing it replays only those tasks. Steps are kept in memory and appended
+ * to {@code <file>.undo}, where other processes using the same data file find
+ * them:
+ * <pre>
+ *   J generation         first line, 16 hex digits; a new generation means the file was rewritten
+ *   S changes label      a step, followed by two lines per task it changed:
+ *   - {json} | - id      the task before the step, or only its id if the step created it
+ *   + {json} | + id      the task after the step, or only its id if the step removed it
+ *   U                    the newest step was undone
+ *   R                    the newest undone step was redone
+ * </pre>
+ * Recording a step only encodes it and queues it; queued steps are appended
+ * together, under a lock on the file, by {@link #drain}, which the service runs
+ * whenever it writes its changes to the data file. A process that only records
+ * steps never reads the file; it is read, and from then on followed, once a
+ * step is undone or redone. Torn records left by a crash are skipped.
+ * <p>
+ * The newest {@code maxSteps} steps within {@code maxBytes} are kept. A step
+ * larger than {@code maxBytes} on its own cannot be undone and clears the
+ * history. The file is rewritten with only the kept steps once it is twice
+ * their size, so recording a step costs O(tasks it changed) amortised.
+ */
+final class UndoJournal implements Closeable {
+    private static final long MIN_REWRITE = 64 << 10;
+    private static final int HEADER_LENGTH = 19; // "J " + 16 hex digits + '\n'
+    /** Rough journal bytes per task apart from its title, to stop collecting a step that cannot be kept. */
+    private static final int ESTIMATE_PER_TASK = 120;
+
+    /** One undoable change; {@code changes} has one entry per task. */
+    record Step(String label, List<TaskRepository.Change> changes, long bytes) { }
+
+    private final Path file;
+    private final int maxSteps;
+    private final long maxBytes;
+    private final FileChannel ch;
+    private final ThreadLocal<Builder> open = new ThreadLocal<>();
+    /** Finished steps not yet written, oldest first; a null {@code bytes} means the step was too large to keep. */
+    private final Queue<Queued> queued = new ConcurrentLinkedQueue<>();
+    /** Newest first. */
+    private final Deque<Step> undo = new ArrayDeque<>();
+    /** Next to redo first. */
+    private final Deque<Step> redo = new ArrayDeque<>();
+    private long keptBytes;
+    private boolean loaded;
+    private long generation;
+    /** Bytes of the file reflected in {@link #undo} and {@link #redo}. */
+    private long offset;
+    /** File size after this process last wrote; if it is still the size, the file ends with a whole line. */
+    private long written = -1;
+    /** Set while this process holds the file lock, which it cannot take twice. */
+    private boolean locked;
+
+    UndoJournal(Path file, int maxSteps, long maxBytes) {
+        this.file = file;
+        this.maxSteps = maxSteps;
+        this.maxBytes = maxBytes;
+        try {
+            this.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open undo journal: " + file, e);
+        }
+    }
+
+    /**
+     * Runs {@code body} as one step: every change it records on this thread is
+     * undone together. Calls may nest; the outermost one makes the step.
+     */
+    <T> T step(String label, Supplier<T> body) {
+        if (open.get() != null) return body.get();
+        Builder b = new Builder(label);
+        open.set(b);
+        try {
+            return body.get();
+        } finally {
+            open.remove();
+            commit(b);
+        }
+    }
+
+    /** Records that {@code before} became {@code after}; either is null when the task was created or removed. */
+    void record(String label, Task before, Task after) {
+        Builder b = open.get();
+        if (b != null) {
+            b.add(before, after);
+            return;
+        }
+        b = new Builder(label);
+        b.add(before, after);
+        commit(b);
+    }
+
+    /**
+     * Calls {@code apply} with the newest step and marks it undone, unless there
+     * is none. A step of which {@code apply} put back no task stays where it is.
+     */
+    synchronized Optional<TodoService.UndoResult> undo(Function<Step, TodoService.UndoResult> apply) {
+        return move(undo, redo, "U\n", apply);
+    }
+
+    /** Calls {@code apply} with the newest undone step and marks it redone; see {@link #undo}. */
+    synchronized Optional<TodoService.UndoResult> redo(Function<Step, TodoService.UndoResult> apply) {
+        return move(redo, undo, "R\n", apply);
+    }
+
+    /** Writes the queued steps. Failures are reported, not thrown: the changes they record are already made. */
+    synchronized void drain() {
+        if (queued.isEmpty() || locked) return; // an undo writes them itself
+        try (FileLock ignored = ch.lock()) {
+            writeQueued();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Undo journal not written, recent changes cannot be undone: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        drain();
+        try {
+            ch.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close " + file, e);
+        }
+    }
+
+    static boolean sameFields(Task a, Task b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return a.getId() == b.getId() && a.isDone() == b.isDone() && a.getTitle().equals(b.getTitle())
+                && a.getCreatedAt().equals(b.getCreatedAt()) && Objects.equals(a.getDue(), b.getDue());
+    }
+
+    private Optional<TodoService.UndoResult> move(Deque<Step> from, Deque<Step> to, String marker,
+                                                  Function<Step, TodoService.UndoResult> apply) {
+        try (FileLock ignored = ch.lock()) {
+            locked = true;
+            writeQueued();
+            catchUp();
+            Step step = from.peek();
+            if (step == null) return Optional.empty();
+            TodoService.UndoResult result = apply.apply(step);
+            if (result.tasks() == 0) return Optional.of(result);
+            append(marker.getBytes(StandardCharsets.US_ASCII));
+            offset = ch.size();
+            to.push(from.pop());
+            return Optional.of(result);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to update undo journal: " + file, e);
+        } finally {
+            locked = false;
+        }
+    }
+
+    /** Queues a finished step for the next {@link #drain}; encoding it is the only work done on the caller's thread. */
+    private void commit(Builder b) {
+        if (!b.overflow && b.changes.isEmpty()) return;
+        List<TaskRepository.Change> changes = List.copyOf(b.changes.values());
+        byte[] bytes = b.overflow ? null : encode(b.label, changes);
+        queued.add(new Queued(new Step(b.label, changes, bytes != null ? bytes.length : 0), bytes));
+    }
+
+    /** Appends the queued steps in order; the caller holds the file lock. */
+    private void writeQueued() throws IOException {
+        Queued q;
+        while ((q = queued.poll()) != null) {
+            if (q.bytes() == null || q.bytes().length > maxBytes) {
+                clear();
+                rewrite();
+                continue;
+            }
+            if (loaded) catchUp();
+            else if (ch.size() == 0) writeHeader();
+            append(q.bytes());
+            if (loaded) {
+                offset = ch.size();
+                push(q.step());
+            }
+            long limit = Math.max(MIN_REWRITE, 2 * (loaded ? keptBytes : maxBytes));
+            if (ch.size() > limit) {
+                catchUp();
+                rewrite();
+            }
+        }
+    }
+
+    private record Queued(Step step, byte[] bytes) { }
+
+    private void push(Step step) {
+        undo.push(step);
+        keptBytes += step.bytes();
+        for (Step s : redo) keptBytes -= s.bytes();
+        redo.clear();
+        while (undo.size() > maxSteps || keptBytes > maxBytes) keptBytes -= undo.removeLast().bytes();
+    }
+
+    private void clear() {
+        undo.clear();
+        redo.clear();
+        keptBytes = 0;
+    }
+
+    // ---------------------------------------------------------------- file
+
+    /** Brings the stacks in line with the file; the caller holds the file lock. */
+    private void catchUp() throws IOException {
+        long size = ch.size();
+        if (size < HEADER_LENGTH) {
+            clear();
+            rewrite();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining() && ch.read(header, header.position()) > 0) { }
+        long gen;
+        try {
+            String line = new String(header.array(), StandardCharsets.US_ASCII);
+            if (!line.startsWith("J ") || line.charAt(HEADER_LENGTH - 1) != '\n') throw new NumberFormatException(line);
+            gen = Long.parseUnsignedLong(line, 2, HEADER_LENGTH - 1, 16);
+        } catch (NumberFormatException e) {
+            System.err.println("Undo journal is damaged, starting a new one: " + file);
+            clear();
+            rewrite();
+            return;
+        }
+        if (!loaded || gen != generation || size < offset) {
+            clear();
+            generation = gen;
+            offset = HEADER_LENGTH;
+            loaded = true;
+        }
+        if (size > offset) replay(size);
+    }
+
+    private void replay(long size) throws IOException {
+        if (size - offset > Integer.MAX_VALUE - 8) throw new IOException("Undo journal too large: " + file);
+        ByteBuffer buf = ByteBuffer.allocate((int) (size - offset));
+        while (buf.hasRemaining() && ch.read(buf, offset + buf.position()) > 0) { }
+        byte[] b = buf.array();
+        int n = buf.position();
+        int pos = 0;
+        while (true) {
+            int eol = lineEnd(b, pos, n);
+            if (eol < 0) break; // a torn last line: it is skipped once something follows it
+            switch (b[pos]) {
+                case 'U' -> { if (!undo.isEmpty()) redo.push(undo.pop()); }
+                case 'R' -> { if (!redo.isEmpty()) undo.push(redo.pop()); }
+                case 'S' -> {
+                    int next = readStep(b, pos, eol, n);
+                    if (next > 0) {
+                        pos = next;
+                        continue;
+                    }
+                }
+                default -> { } // part of a torn step
+            }
+            pos = eol + 1;
+        }
+        offset += pos;
+    }
+
+    /** Pushes the step whose header line is {@code b[pos, eol)} and returns where it ends, or -1 if it is torn. */
+    private int readStep(byte[] b, int pos, int eol, int n) {
+        String header = new String(b, pos, eol - pos, StandardCharsets.UTF_8);
+        int space = header.indexOf(' ', 2);
+        int count;
+        try {
+            count = Integer.parseInt(header, 2, space > 0 ? space : header.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        String label = space > 0 ? header.substring(space + 1) : "";
+        List<TaskRepository.Change> changes = new ArrayList<>(Math.min(count, 1 << 16));
+        TaskCodec codec = TaskCodec.shared();
+        ByteBuffer wrapped = ByteBuffer.wrap(b);
+        int at = eol + 1;
+        try {
+            for (int i = 0; i < count; i++) {
+                int beforeEnd = lineEnd(b, at, n);
+                if (beforeEnd < 0 || b[at] != '-') return -1;
+                Task before = decode(codec, wrapped, b, at + 2, beforeEnd);
+                at = beforeEnd + 1;
+                int afterEnd = lineEnd(b, at, n);
+                if (afterEnd < 0 || b[at] != '+') return -1;
+                Task after = decode(codec, wrapped, b, at + 2, afterEnd);
+                at = afterEnd + 1;
+                if (before != null || after != null) changes.add(new TaskRepository.Change(before, after));
+            }
+        } catch (RuntimeException e) {
+            return -1;
+        }
+        push(new Step(label, List.copyOf(changes), at - pos));
+        return at;
+    }
+
+    /** A task, or null for a line holding only an id. */
+    private static Task decode(TaskCodec codec, ByteBuffer wrapped, byte[] b, int from, int to) {
+        if (from < to && b[from] == '{') return codec.decode(wrapped, from, to);
+        Long.parseLong(new String(b, from, to - from, StandardCharsets.US_ASCII));
+        return null;
+    }
+
+    private static int lineEnd(byte[] b, int from, int n) {
+        for (int i = from; i < n; i++) if (b[i] == '\n') return i;
+        return -1;
+    }
+
+    private void writeHeader() throws IOException {
+        generation = ThreadLocalRandom.current().nextLong();
+        ch.write(ByteBuffer.wrap(("J " + String.format("%016x", generation) + "\n").getBytes(StandardCharsets.US_ASCII)), 0);
+    }
+
+    /** Appends at the end of the file, after ending a torn last line if there is one. */
+    private void append(byte[] bytes) throws IOException {
+        long end = ch.size();
+        if (end > 0 && end != written) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            ch.read(last, end - 1);
+            if (last.get(0) != '\n') ch.write(ByteBuffer.wrap(new byte[] {'\n'}), end++);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) ch.write(buf, end + buf.position());
+        written = end + bytes.length;
+    }
+
+    /** Replaces the file's contents with the kept steps, under a new generation. */
+    private void rewrite() throws IOException {
+        ch.truncate(0);
+        writeHeader();
+        for (Step s : undo.reversed()) append(encode(s.label(), s.changes()));
+        for (Step s : redo) append(encode(s.label(), s.changes()));
+        for (int i = 0; i < redo.size(); i++) append(new byte[] {'U', '\n'});
+        offset = ch.size();
+        loaded = true;
+    }
+
+    private static byte[] encode(String label, Collection<TaskRepository.Change> changes) {
+        TaskCodec codec = TaskCodec.shared();
+        StringBuilder sb = new StringBuilder();
+        sb.append("S ").append(changes.size()).append(' ').append(label.replace('\n', ' ')).append('\n');
+        for (TaskRepository.Change c : changes) {
+            sb.append("- ").append(c.before() != null ? codec.toJson(c.before()) : Long.toString(c.id())).append('\n');
+            sb.append("+ ").append(c.after() != null ? codec.toJson(c.after()) : Long.toString(c.id())).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The changes of a step being recorded, one per task: its first before and its last after. */
+    private final class Builder {
+        private final String label;
+        private final Map<Long, TaskRepository.Change> changes = new LinkedHashMap<>();
+        private long estimate;
+        private boolean overflow;
+
+        Builder(String label) {
+            this.label = label;
+        }
+
+        void add(Task before, Task after) {
+            if (overflow) return;
+            long id = after != null ? after.getId() : before.getId();
+            TaskRepository.Change prev = changes.get(id);
+            Task first = prev != null ? prev.before() : before;
+            if (sameFields(first, after)) {
+                changes.remove(id);
+            } else {
+                changes.put(id, new TaskRepository.Change(first, after));
+            }
+            estimate += ESTIMATE_PER_TASK + 2L * (after != null ? after : before).getTitle().length();
+            if (estimate > 2 * maxBytes) {
+                // far too large to keep: stop holding on to the tasks
+                overflow = true;
+                changes.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A compact on-disk format: tasks kept in a memory-mapped file of fixed-size
+ * slots followed by a heap of UTF-8 titles, so that changing a task rewrites
+ * only its slot. Layout, all big-endian:
+ * <pre>
+ *   header  magic "TODA" | u16 version | u16 reserved | i32 slot capacity | i32 slots used
+ *           | i32 first free slot (-1 = none) | i32 live tasks | i64 title bytes used
+ *           | i64 title bytes no longer referenced | 24 reserved                    (64 bytes)
+ *   slot    i64 id | u8 flags (1 = done, 2 = has due, 4 = live) | 3 reserved | i32 due epoch day
+ *           | i64 created epoch second | i32 created nano | i32 created offset seconds
+ *           | i64 title offset | i32 title length | i32 next free slot              (48 bytes)
+ *   titles  from 64 + capacity * 48 to the end of the file
+ * </pre>
+ * Opening maps the file and reads the slots' ids into an index; nothing is
+ * parsed until a task is asked for. {@link TaskStore} still loads every task
+ * once it opens the file, so for the app this engine makes saves cheap; it does
+ * not keep the tasks off the heap. Completing a task or changing its due date
+ * rewrites its slot in place, and a save only forces the touched pages to disk.
+ * Removed slots go on a free list and are reused; a new title is appended to
+ * the title heap. Once the slots run out, or more than half of the slots or
+ * title bytes are dead, the file is compacted: rewritten densely in id order
+ * through a temp file and an atomic rename.
+ * <p>
+ * Other engines replace the file or append to a log, so a crash leaves the last
+ * complete save; here a crash in the middle of a change can leave that change
+ * partly applied. The file is mapped as a whole and so limited to 2 GB, about
+ * 20 million tasks with 50-byte titles. JSON-lines and binary files are
+ * converted before first use (see {@link #convert}); the original is kept as
+ * {@code .bak}. Compacting renames a new file over the mapped one, which
+ * Windows does not allow, so {@link TaskRepository} refuses this engine there
+ * (see {@link StorageMode#isSupported}).
+ */
+final class ArenaStorage implements TaskStorage {
+    static final byte[] MAGIC = {'T', 'O', 'D', 'A'};
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 48;
+    private static final int MIN_SLOTS = 1024;
+    private static final long MIN_TITLE_BYTES = 64 << 10;
+    private static final long MAX_FILE = Integer.MAX_VALUE;
+    private static final int WINDOW = 1 << 20;
+
+    private static final int H_CAPACITY = 8;
+    private static final int H_USED = 12;
+    private static final int H_FREE = 16;
+    private static final int H_LIVE = 20;
+    private static final int H_TITLES_USED = 24;
+    private static final int H_TITLES_DEAD = 32;
+
+    private static final int S_ID = 0;
+    private static final int S_FLAGS = 8;
+    private static final int S_DUE = 12;
+    private static final int S_SECOND = 16;
+    private static final int S_NANO = 24;
+    private static final int S_OFFSET = 28;
+    private static final int S_TITLE = 32;
+    private static final int S_TITLE_LENGTH = 40;
+    private static final int S_NEXT_FREE = 44;
+
+    private static final int FLAG_DONE = 1;
+    private static final int FLAG_DUE = 2;
+    private static final int FLAG_LIVE = 4;
+
+    private final Path file;
+    private final boolean parallelLoad;
+    private final Durability durability;
+    private final IdIndex index = new IdIndex();
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int titlesStart;
+    private long maxId;
+    private boolean maxIdStale;
+    private boolean touched;
+    private byte[] scratch = new byte[256];
+
+    ArenaStorage(Path file, boolean parallelLoad, Durability durability) {
+        this.file = file;
+        this.parallelLoad = parallelLoad;
+        this.durability = durability;
+    }
+
+    /** Maps the file again: another process may have changed it or replaced it by compacting. */
+    @Override
+    public synchronized void refresh() {
+        unmap();
+        AtomicFiles.recover(file, ArenaStorage::isComplete);
+    }
+
+    @Override
+    public synchronized List<Task> loadAll() {
+        open();
+        int used = map.getInt(H_USED);
+        List<Task> tasks = new ArrayList<>(map.getInt(H_LIVE));
+        for (int slot = 0; slot < used; slot++) {
+            if (isLive(slot)) tasks.add(taskAt(slot));
+        }
+        tasks.sort(Comparator.comparingLong(Task::getId));
+        return tasks;
+    }
+
+    @Override
+    public synchronized void storeAll(List<Task> tasks) {
+        List<Task> sorted = new ArrayList<>(tasks);
+        sorted.sort(Comparator.comparingLong(Task::getId));
+        rewrite(sorted.size(), w -> {
+            for (Task t : sorted) w.add(t);
+        });
+    }
+
+    @Override
+    public synchronized Optional<Task> find(long id) {
+        open();
+        int slot = index.get(id);
+        return slot >= 0 ? Optional.of(taskAt(slot)) : Optional.empty();
+    }
+
+    @Override
+    public synchronized long maxId() {
+        open();
+        if (maxIdStale) {
+            maxId = index.maxKey();
+            maxIdStale = false;
+        }
+        return maxId;
+    }
+
+    @Override
+    public synchronized void insert(Task task) {
+        open();
+        upsert(task);
+        endOfCall();
+    }
+
+    @Override
+    public synchronized boolean update(long id, UnaryOperator<Task> fn) {
+        open();
+        int slot = index.get(id);
+        if (slot < 0) return false;
+        Task prev = taskAt(slot);
+        Task next = fn.apply(prev);
+        if (next == prev) return false;
+        if (next.getId() != id) removeSlot(slot);
+        upsert(next);
+        endOfCall();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(long id) {
+        open();
+        int slot = index.get(id);
+        if (slot < 0) return false;
+        removeSlot(slot);
+        endOfCall();
+        return true;
+    }
+
+    @Override
+    public synchronized int deleteIf(Predicate<Task> filter) {
+        open();
+        int used = map.getInt(H_USED);
+        int removed = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (isLive(slot) && filter.test(taskAt(slot))) {
+                removeSlot(slot);
+                removed++;
+            }
+        }
+        endOfCall();
+        return removed;
+    }
+
+    @Override
+    public synchronized void applyChanges(Collection<Task> upserts, Collection<Long> removedIds) {
+        open();
+        for (Task t : upserts) upsert(t);
+        for (long id : removedIds) {
+            int slot = index.get(id);
+            if (slot >= 0) removeSlot(slot);
+        }
+        endOfCall();
+    }
+
+    @Override
+    public synchronized void compact() {
+        open();
+        compact(map.getInt(H_LIVE));
+    }
+
+    @Override
+    public synchronized void close() {
+        unmap();
+    }
+
+    @Override
+    public boolean needsConversion() {
+        try {
+            return LogStorage.hasPendingLog(file) || Files.notExists(file) || Files.size(file) == 0 || !isArena(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read tasks: " + file, e);
+        }
+    }
+
+    /** Converts a JSON-lines or binary file, or writes an empty arena where there is no file yet. */
+    @Override
+    public synchronized void convert() {
+        if (!needsConversion()) return;
+        if (LogStorage.hasPendingLog(file)) LogStorage.foldLog(file, parallelLoad, durability);
+        if (!needsConversion()) return;
+        JsonLinesStorage.ensureFile(file);
+        try {
+            if (Files.size(file) > 0) {
+                migrate();
+            } else {
+                AtomicFiles.write(file, durability, ch -> write(ch, 0, w -> { }));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to convert tasks: " + file, e);
+        }
+        unmap();
+    }
+
+    static boolean isArena(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(MAGIC.length);
+            return Arrays.equals(head, MAGIC);
+        }
+    }
+
+    // ---------------------------------------------------------------- mapping
+
+    private void open() {
+        if (map != null) return;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            validate(map, channel.size());
+        } catch (IOException e) {
+            unmap();
+            throw new RuntimeException("Failed to open tasks: " + file, e);
+        }
+        titlesStart = HEADER_SIZE + map.getInt(H_CAPACITY) * SLOT_SIZE;
+        index.clear();
+        maxId = 0;
+        maxIdStale = false;
+        int used = map.getInt(H_USED);
+        for (int slot = 0; slot < used; slot++) {
+            if (!isLive(slot)) continue;
+            long id = map.getLong(slotBase(slot) + S_ID);
+            index.put(id, slot);
+            maxId = Math.max(maxId, id);
+        }
+        StorageMetrics.BYTES_READ.add(HEADER_SIZE + (long) used * SLOT_SIZE);
+    }
+
+    private static void validate(ByteBuffer map, long size) throws IOException {
+        if (size < HEADER_SIZE) throw corrupt("Truncated header");
+        for (int i = 0; i < MAGIC.length; i++) if (map.get(i) != MAGIC[i]) throw corrupt("Not an arena file");
+        int version = Short.toUnsignedInt(map.getShort(4));
+        if (version != VERSION) throw corrupt("Unsupported arena version " + version);
+        int capacity = map.getInt(H_CAPACITY), used = map.getInt(H_USED), live = map.getInt(H_LIVE);
+        long titles = map.getLong(H_TITLES_USED);
+        if (capacity < 0 || used < 0 || used > capacity || live < 0 || live > used || titles < 0
+                || HEADER_SIZE + (long) capacity * SLOT_SIZE + titles > size) {
+            throw corrupt("Inconsistent arena header");
+        }
+    }
+
+    private static IOException corrupt(String message) {
+        StorageMetrics.PARSE_FAILURES.increment();
+        return new IOException(message);
+    }
+
+    private static boolean isComplete(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            validate(ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(ch.size(), HEADER_SIZE)), ch.size());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void unmap() {
+        map = null; // the mapping itself goes when it is garbage collected
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close " + file, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void migrate() throws IOException {
+        List<Task> tasks = BinaryStorage.isBinary(file)
+                ? BinaryStorage.read(file)
+                : new JsonLinesStorage(file, parallelLoad, durability).loadAll();
+        Files.copy(file, file.resolveSibling(file.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+        AtomicFiles.write(file, durability, ch -> write(ch, tasks.size(), w -> {
+            for (Task t : tasks) w.add(t);
+        }));
+    }
+
+    /** Grows the title heap to hold at least {@code needed} more bytes, by extending the file and mapping it again. */
+    private void ensureTitleRoom(int needed) {
+        long end = titlesStart + map.getLong(H_TITLES_USED) + needed;
+        if (end <= map.capacity()) return;
+        long size = Math.min(MAX_FILE, Math.max(end, 2L * map.capacity()));
+        if (end > size) throw new IllegalStateException("Task arena would exceed 2 GB: " + file);
+        try {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to grow " + file, e);
+        }
+    }
+
+    // ---------------------------------------------------------------- slots
+
+    private static int slotBase(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private boolean isLive(int slot) {
+        return (map.get(slotBase(slot) + S_FLAGS) & FLAG_LIVE) != 0;
+    }
+
+    private Task taskAt(int slot) {
+        int base = slotBase(slot);
+        int flags = map.get(base + S_FLAGS);
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds(map.getInt(base + S_OFFSET));
+        OffsetDateTime createdAt = OffsetDateTime.of(
+                LocalDateTime.ofEpochSecond(map.getLong(base + S_SECOND), map.getInt(base + S_NANO), offset), offset);
+        LocalDate due = (flags & FLAG_DUE) != 0 ? LocalDate.ofEpochDay(map.getInt(base + S_DUE)) : null;
+        int length = readTitle(base);
+        return new Task(map.getLong(base + S_ID), new String(scratch, 0, length, StandardCharsets.UTF_8),
+                (flags & FLAG_DONE) != 0, createdAt, due);
+    }
+
+    /** Copies the title of the slot at {@code base} into {@link #scratch} and returns its length. */
+    private int readTitle(int base) {
+        int length = map.getInt(base + S_TITLE_LENGTH);
+        if (scratch.length < length) scratch = new byte[Math.max(length, 2 * scratch.length)];
+        map.get((int) (titlesStart + map.getLong(base + S_TITLE)), scratch, 0, length);
+        return length;
+    }
+
+    /** Writes {@code t} over the slot holding its id, or into a free slot; a slot keeps its title if it did not change. */
+    private void upsert(Task t) {
+        if (t.getId() <= 0) throw new IllegalArgumentException("Task ids must be positive: " + t.getId());
+        int slot = index.get(t.getId());
+        byte[] title = null;
+        if (slot >= 0) {
+            int base = slotBase(slot);
+            int length = readTitle(base);
+            byte[] bytes = t.getTitle().getBytes(StandardCharsets.UTF_8);
+            if (!Arrays.equals(scratch, 0, length, bytes, 0, bytes.length)) {
+                title = bytes;
+                map.putLong(H_TITLES_DEAD, map.getLong(H_TITLES_DEAD) + length);
+            }
+        } else {
+            title = t.getTitle().getBytes(StandardCharsets.UTF_8);
+            slot = allocateSlot();
+        }
+        int base = slotBase(slot);
+        if (title != null) {
+            ensureTitleRoom(title.length);
+            long offset = map.getLong(H_TITLES_USED);
+            map.put((int) (titlesStart + offset), title);
+            map.putLong(H_TITLES_USED, offset + title.length);
+            map.putLong(base + S_TITLE, offset);
+            map.putInt(base + S_TITLE_LENGTH, title.length);
+            StorageMetrics.BYTES_WRITTEN.add(title.length);
+        }
+        OffsetDateTime created = t.getCreatedAt();
+        map.putLong(base + S_ID, t.getId());
+        map.putInt(base + S_DUE, t.getDue() != null ? (int) t.getDue().toEpochDay() : 0);
+        map.putLong(base + S_SECOND, created.toEpochSecond());
+        map.putInt(base + S_NANO, created.getNano());
+        map.putInt(base + S_OFFSET, created.getOffset().getTotalSeconds());
+        map.putInt(base + S_NEXT_FREE, -1);
+        map.put(base + S_FLAGS, flags(t)); // last: this makes a new slot live
+        StorageMetrics.BYTES_WRITTEN.add(SLOT_SIZE);
+        if (index.put(t.getId(), slot)) map.putInt(H_LIVE, map.getInt(H_LIVE) + 1);
+        maxId = Math.max(maxId, t.getId());
+        touched = true;
+    }
+
+    private static byte flags(Task t) {
+        return (byte) (FLAG_LIVE | (t.isDone() ? FLAG_DONE : 0) | (t.getDue() != null ? FLAG_DUE : 0));
+    }
+
+    private int allocateSlot() {
+        int free = map.getInt(H_FREE);
+        if (free >= 0) {
+            map.putInt(H_FREE, map.getInt(slotBase(free) + S_NEXT_FREE));
+            return free;
+        }
+        int used = map.getInt(H_USED);
+        if (used == map.getInt(H_CAPACITY)) {
+            compact(used + 1);
+            used = map.getInt(H_USED);
+        }
+        map.putInt(H_USED, used + 1);
+        return used;
+    }
+
+    private void removeSlot(int slot) {
+        int base = slotBase(slot);
+        long id = map.getLong(base + S_ID);
+        map.put(base + S_FLAGS, (byte) 0);
+        map.putLong(H_TITLES_DEAD, map.getLong(H_TITLES_DEAD) + map.getInt(base + S_TITLE_LENGTH));
+        map.putInt(base + S_NEXT_FREE, map.getInt(H_FREE));
+        map.putInt(H_FREE, slot);
+        map.putInt(H_LIVE, map.getInt(H_LIVE) - 1);
+        index.remove(id);
+        if (id == maxId) maxIdStale = true;
+        touched = true;
+    }
+
+    /** Ends one repository call: compacts if half the file is dead, then forces the changed pages to disk. */
+    private void endOfCall() {
+        if (!touched) return;
+        touched = false;
+        int live = map.getInt(H_LIVE);
+        boolean slotsWasted = map.getInt(H_USED) - live > Math.max(MIN_SLOTS, live);
+        long dead = map.getLong(H_TITLES_DEAD);
+        boolean titlesWasted = dead > Math.max(MIN_TITLE_BYTES, map.getLong(H_TITLES_USED) - dead);
+        if (slotsWasted || titlesWasted) {
+            compact(live);
+        } else if (durability != Durability.NONE) {
+            map.force();
+        }
+    }
+
+    // ---------------------------------------------------------------- rewriting
+
+    /** Rewrites the live tasks densely in id order, with room for twice {@code rows} tasks. */
+    private void compact(int rows) {
+        long[] ids = index.keys();
+        Arrays.sort(ids);
+        rewrite(Math.max(rows, ids.length), w -> {
+            for (long id : ids) {
+                int base = slotBase(index.get(id));
+                int length = readTitle(base);
+                w.add(id, map.get(base + S_FLAGS), map.getInt(base + S_DUE), map.getLong(base + S_SECOND),
+                        map.getInt(base + S_NANO), map.getInt(base + S_OFFSET), scratch, length);
+            }
+        });
+    }
+
+    private interface Rows {
+        void writeTo(Writer w) throws IOException;
+    }
+
+    private void rewrite(int rows, Rows content) {
+        try {
+            AtomicFiles.write(file, durability, ch -> write(ch, rows, content));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write tasks: " + file, e);
+        }
+        unmap();
+        open();
+    }
+
+    /** Writes a whole arena with room for twice {@code rows} tasks and twice their title bytes. */
+    private static void write(FileChannel ch, int rows, Rows content) throws IOException {
+        int capacity = (int) Math.min((MAX_FILE - HEADER_SIZE) / SLOT_SIZE / 2, Math.max(MIN_SLOTS, 2L * rows));
+        Writer w = new Writer(ch, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        content.writeTo(w);
+        w.finish(capacity);
+    }
+
+    /** Streams slots and titles to their two regions through one buffer each. */
+    private static final class Writer {
+        private final FileChannel ch;
+        private final long titlesStart;
+        private final ByteBuffer slots = ByteBuffer.allocate(WINDOW);
+        private ByteBuffer titles = ByteBuffer.allocate(WINDOW);
+        private long slotsWritten;
+        private long titlesWritten;
+        private int count;
+
+        Writer(FileChannel ch, long titlesStart) {
+            this.ch = ch;
+            this.titlesStart = titlesStart;
+        }
+
+        void add(Task t) throws IOException {
+            byte[] title = t.getTitle().getBytes(StandardCharsets.UTF_8);
+            OffsetDateTime created = t.getCreatedAt();
+            add(t.getId(), flags(t), t.getDue() != null ? (int) t.getDue().toEpochDay() : 0, created.toEpochSecond(),
+                    created.getNano(), created.getOffset().getTotalSeconds(), title, title.length);
+        }
+
+        void add(long id, int flags, int dueDay, long second, int nano, int offset, byte[] title, int length)
+                throws IOException {
+            if ((long) HEADER_SIZE + (long) (count + 1) * SLOT_SIZE > titlesStart) {
+                throw new IllegalStateException("More tasks than slots");
+            }
+            if (slots.remaining() < SLOT_SIZE) drainSlots();
+            long titleOffset = titlesWritten + titles.position();
+            slots.putLong(id).put((byte) flags).put(new byte[3]).putInt(dueDay).putLong(second).putInt(nano)
+                    .putInt(offset).putLong(titleOffset).putInt(length).putInt(-1);
+            if (titles.remaining() < length) {
+                drainTitles();
+                if (titles.capacity() < length) titles = ByteBuffer.allocate(length);
+            }
+            titles.put(title, 0, length);
+            count++;
+        }
+
+        void finish(int capacity) throws IOException {
+            drainSlots();
+            drainTitles();
+            long size = Math.min(MAX_FILE, titlesStart + Math.max(MIN_TITLE_BYTES, 2 * titlesWritten));
+            if (titlesStart + titlesWritten > size) throw new IllegalStateException("Task arena would exceed 2 GB");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                    .putInt(capacity).putInt(count).putInt(-1).putInt(count)
+                    .putLong(titlesWritten).putLong(0);
+            header.clear();
+            while (header.hasRemaining()) ch.write(header, header.position());
+            ch.write(ByteBuffer.allocate(1), size - 1);
+        }
+
+        private void drainSlots() throws IOException {
+            slots.flip();
+            while (slots.hasRemaining()) ch.write(slots, HEADER_SIZE + slotsWritten + slots.position());
+            slotsWritten += slots.limit();
+            slots.clear();
+        }
+
+        private void drainTitles() throws IOException {
+            titles.flip();
+            while (titles.hasRemaining()) ch.write(titles, titlesStart + titlesWritten + titles.position());
+            titlesWritten += titles.limit();
+            titles.clear();
+        }
+    }
+
+    /** Open-addressing map from task id to slot, so the index costs no object per task. Id 0 marks an empty entry. */
+    private static final class IdIndex {
+        private long[] keys = new long[16];
+        private int[] values = new int[16];
+        private int size;
+
+        int get(long id) {
+            int mask = keys.length - 1;
+            for (int i = hash(id) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == id) return values[i];
+            }
+            return -1;
+        }
+
+        /** Returns true if the id was not present. */
+        boolean put(long id, int slot) {
+            if (2 * (size + 1) > keys.length) resize(2 * keys.length);
+            int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            for (; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    values[i] = slot;
+                    return false;
+                }
+            }
+            keys[i] = id;
+            values[i] = slot;
+            size++;
+            return true;
+        }
+
+        void remove(long id) {
+            int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            while (keys[i] != id) {
+                if (keys[i] == 0) return;
+                i = (i + 1) & mask;
+            }
+            // shift later entries of the probe run back, so no lookup stops early at the hole
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = hash(keys[j]) & mask;
+                boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+                if (movable) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            size--;
+        }
+
+        long[] keys() {
+            long[] out = new long[size];
+            int n = 0;
+            for (long k : keys) if (k != 0) out[n++] = k;
+            return out;
+        }
+
+        long maxKey() {
+            long max = 0;
+            for (long k : keys) max = Math.max(max, k);
+            return max;
+        }
+
+        void clear() {
+            keys = new long[16];
+            values = new int[16];
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package be.todo.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+
+/**
+ * Whole-file replacement that never leaves a half-written target behind: the
+ * new content goes to {@code <file>.tmp} in the same directory, is optionally
+ * forced to disk, and is then renamed over the target.
+ */
+final class AtomicFiles {
+
+    interface Body {
+        void writeTo(FileChannel ch) throws IOException;
+    }
+
+    private AtomicFiles() { }
+
+    static Path tempFor(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    static void write(Path target, Durability durability, Body body) throws IOException {
+        Path tmp = tempFor(target);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            body.writeTo(ch);
+            StorageMetrics.BYTES_WRITTEN.add(ch.size());
+            if (durability != Durability.NONE) ch.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (durability != Durability.NONE) syncDirectory(target);
+    }
+
+    /**
+     * Cleans up after a crash during {@link #write}. A leftover temp file next to an
+     * existing target never got renamed, so the target is the last complete save
+     * and the temp file is dropped. Without a target the temp file is promoted if
+     * {@code complete} accepts it.
+     */
+    static void recover(Path target, Predicate<Path> complete) {
+        Path tmp = tempFor(target);
+        try {
+            if (Files.notExists(tmp)) return;
+            if (Files.notExists(target) && complete.test(tmp)) {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (NoSuchFileException e) {
+            // another reader recovered it first
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to recover interrupted save: " + tmp, e);
+        }
+    }
+
+    /** Makes a rename or a newly created file in {@code file}'s directory durable. */
+    static void syncDirectory(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir == null) return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened or forced on every platform (e.g. Windows)
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot. Layout, all big-endian:
+ * <pre>
+ *   header  magic "TODB" | u16 version | u16 reserved | i64 count | i64 body length | i32 CRC32 of body
+ *   record  i64 id | u8 flags (1 = done, 2 = has due) | i64 created epoch second | i32 created nano
+ *           | i32 created offset seconds | i32 due epoch day | i32 title length | title UTF-8 bytes
+ * </pre>
+ * A file that does not start with the magic is read as JSON-lines and rewritten
+ * in this format before its first load (see {@link #convert}); the original is
+ * kept next to it as {@code .bak}. A log left by {@link StorageMode#LOG} is
+ * folded into the file first.
+ */
+final class BinaryStorage implements TaskStorage {
+    static final byte[] MAGIC = {'T', 'O', 'D', 'B'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 28;
+    private static final int RECORD_FIXED = 33;
+    private static final int WINDOW = 1 << 20;
+
+    private static final int FLAG_DONE = 1;
+    private static final int FLAG_DUE = 2;
+
+    private final Path file;
+    private final boolean parallelLoad;
+    private final Durability durability;
+
+    BinaryStorage(Path file, boolean parallelLoad, Durability durability) {
+        this.file = file;
+        this.parallelLoad = parallelLoad;
+        this.durability = durability;
+    }
+
+    /** Nothing is cached; this only cleans up after a save that was interrupted by a crash. */
+    @Override
+    public void refresh() {
+        AtomicFiles.recover(file, BinaryStorage::isComplete);
+    }
+
+    @Override
+    public synchronized List<Task> loadAll() {
+        JsonLinesStorage.ensureFile(file);
+        try {
+            return read(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read tasks: " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void storeAll(List<Task> tasks) {
+        JsonLinesStorage.ensureFile(file);
+        try {
+            AtomicFiles.write(file, durability, ch -> write(ch, tasks));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write tasks: " + file, e);
+        }
+    }
+
+    /** The checksum covers the whole body, so a torn write never reads back. */
+    private static boolean isComplete(Path file) {
+        try {
+            read(file);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static boolean isBinary(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(MAGIC.length);
+            return head.length == MAGIC.length && head[0] == MAGIC[0] && head[1] == MAGIC[1]
+                    && head[2] == MAGIC[2] && head[3] == MAGIC[3];
+        }
+    }
+
+    @Override
+    public boolean needsConversion() {
+        try {
+            return LogStorage.hasPendingLog(file) || Files.exists(file) && Files.size(file) > 0 && !isBinary(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read tasks: " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void convert() {
+        if (!needsConversion()) return;
+        if (LogStorage.hasPendingLog(file)) LogStorage.foldLog(file, parallelLoad, durability);
+        if (!needsConversion()) return;
+        List<Task> tasks = new JsonLinesStorage(file, parallelLoad, durability).loadAll();
+        try {
+            Files.copy(file, file.resolveSibling(file.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            AtomicFiles.write(file, durability, ch -> write(ch, tasks));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to convert tasks: " + file, e);
+        }
+    }
+
+    static List<Task> read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() == 0) return new ArrayList<>();
+            StorageMetrics.BYTES_READ.add(ch.size());
+            if (ch.size() < HEADER_SIZE) throw corrupt("Truncated header");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) ch.read(header);
+            for (int i = 0; i < MAGIC.length; i++) if (header.get(i) != MAGIC[i]) throw corrupt("Not a binary snapshot");
+            header.position(MAGIC.length);
+            int version = Short.toUnsignedInt(header.getShort());
+            if (version != VERSION) throw corrupt("Unsupported snapshot version " + version);
+            header.getShort();
+            long count = header.getLong();
+            long bodyLength = header.getLong();
+            int crc = header.getInt();
+            if (ch.size() != HEADER_SIZE + bodyLength) throw corrupt("Truncated snapshot body");
+            if (count < 0 || count > bodyLength / RECORD_FIXED) throw corrupt("Bad record count " + count);
+
+            // lengths are checked against what is left of the body before anything is read by them,
+            // as the checksum can only be verified at the end
+            var in = new Window(ch);
+            long left = bodyLength;
+            List<Task> tasks = new ArrayList<>((int) Math.min(count, Integer.MAX_VALUE - 8));
+            for (long i = 0; i < count; i++) {
+                if (left < RECORD_FIXED) throw corrupt("Truncated record " + i);
+                left -= RECORD_FIXED;
+                ByteBuffer b = in.require(RECORD_FIXED);
+                long id = b.getLong();
+                int flags = b.get();
+                long epochSecond = b.getLong();
+                int nano = b.getInt();
+                ZoneOffset offset = ZoneOffset.ofTotalSeconds(b.getInt());
+                int dueDay = b.getInt();
+                int titleLength = b.getInt();
+                if (titleLength < 0 || titleLength > left) throw corrupt("Bad title length in record " + i);
+                left -= titleLength;
+                b = in.require(titleLength);
+                String title = new String(b.array(), b.position(), titleLength, StandardCharsets.UTF_8);
+                b.position(b.position() + titleLength);
+                OffsetDateTime createdAt = OffsetDateTime.of(LocalDateTime.ofEpochSecond(epochSecond, nano, offset), offset);
+                LocalDate due = (flags & FLAG_DUE) != 0 ? LocalDate.ofEpochDay(dueDay) : null;
+                tasks.add(new Task(id, title, (flags & FLAG_DONE) != 0, createdAt, due));
+            }
+            if (left != 0) throw corrupt("Trailing bytes after the last record");
+            if ((int) in.checksum.getValue() != crc) throw corrupt("Checksum mismatch");
+            tasks.sort(Comparator.comparingLong(Task::getId));
+            return tasks;
+        }
+    }
+
+    private static IOException corrupt(String message) {
+        StorageMetrics.PARSE_FAILURES.increment();
+        return new IOException(message);
+    }
+
+    static void write(FileChannel ch, List<Task> tasks) throws IOException {
+        ch.position(HEADER_SIZE);
+        CRC32 checksum = new CRC32();
+        ByteBuffer out = ByteBuffer.allocate(WINDOW);
+        for (Task t : tasks) {
+            byte[] title = t.getTitle().getBytes(StandardCharsets.UTF_8);
+            if (out.remaining() < RECORD_FIXED + title.length) {
+                drain(out, ch, checksum);
+                if (out.capacity() < RECORD_FIXED + title.length) out = ByteBuffer.allocate(RECORD_FIXED + title.length);
+            }
+            OffsetDateTime created = t.getCreatedAt();
+            out.putLong(t.getId())
+                    .put((byte) ((t.isDone() ? FLAG_DONE : 0) | (t.getDue() != null ? FLAG_DUE : 0)))
+                    .putLong(created.toEpochSecond())
+                    .putInt(created.getNano())
+                    .putInt(created.getOffset().getTotalSeconds())
+                    .putInt(t.getDue() != null ? (int) t.getDue().toEpochDay() : 0)
+                    .putInt(title.length)
+                    .put(title);
+        }
+        drain(out, ch, checksum);
+        long bodyLength = ch.position() - HEADER_SIZE;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                .putLong(tasks.size()).putLong(bodyLength).putInt((int) checksum.getValue());
+        header.flip();
+        ch.write(header, 0);
+    }
+
+    private static void drain(ByteBuffer out, FileChannel ch, CRC32 checksum) throws IOException {
+        out.flip();
+        checksum.update(out.array(), 0, out.limit());
+        while (out.hasRemaining()) ch.write(out);
+        out.clear();
+    }
+
+    /** Read window over the body that keeps the running checksum of everything read into it. */
+    private static final class Window {
+        private final FileChannel ch;
+        private final CRC32 checksum = new CRC32();
+        private ByteBuffer buf = ByteBuffer.allocate(WINDOW).flip();
+
+        Window(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        /** Returns the buffer positioned at the next unread byte with at least {@code n} bytes remaining. */
+        ByteBuffer require(int n) throws IOException {
+            if (buf.remaining() >= n) return buf;
+            buf.compact();
+            if (buf.capacity() < n) buf = ByteBuffer.allocate(n).put(buf.flip());
+            while (buf.position() < n) {
+                int start = buf.position();
+                int read = ch.read(buf);
+                if (read < 0) throw corrupt("Truncated snapshot body");
+                checksum.update(buf.array(), start, read);
+            }
+            return buf.flip();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package be.todo.storage;
+
+/** A write was based on an older version of the data file than the one on disk. */
+public class ConflictException extends RuntimeException {
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    public ConflictException(String file, long expectedVersion, long actualVersion) {
+        super("Data file " + file + " was changed by another process (version " + actualVersion
+                + ", expected " + expectedVersion + ")");
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    public long getExpectedVersion() { return expectedVersion; }
+    public long getActualVersion() { return actualVersion; }
+}
@@ -0,0 +1,13 @@
+package be.todo.storage;
+
+/** What a versioned write does when another process wrote the file since the caller last read it. */
+public enum ConflictPolicy {
+    /** Reject the write with a {@link ConflictException}. */
+    FAIL,
+    /**
+     * Apply the caller's per-task changes on top of the current file. Tasks the
+     * caller did not touch keep the other writer's version; a task the caller
+     * created whose id was taken meanwhile gets the next free id.
+     */
+    REBASE
+}
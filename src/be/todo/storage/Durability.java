@@ -0,0 +1,11 @@
+package be.todo.storage;
+
+/** How hard the repository works to make a completed write survive a crash or power loss. */
+public enum Durability {
+    /** Rely on the OS to write data back; whole-file saves are still atomic renames. */
+    NONE,
+    /** fsync once per repository call (a save, a single change or a write-behind batch). */
+    PER_BATCH,
+    /** fsync after every individual record; only differs from PER_BATCH for the log engine. */
+    PER_WRITE
+}
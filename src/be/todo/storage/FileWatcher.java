@@ -0,0 +1,92 @@
+package be.todo.storage;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a data file and its {@code .log} and {@code .lock} sidecars, and calls
+ * back once a burst of changes has been quiet for a while. Every write by any
+ * process touches at least the lock file, so no write goes unnoticed; our own
+ * writes are reported too and are for the callback to recognise.
+ */
+public final class FileWatcher implements AutoCloseable {
+    private final WatchService watcher;
+    private final Set<Path> names;
+    private final long quietMillis;
+    private final Runnable onChange;
+    private final Thread thread;
+    private String lastError;
+
+    public FileWatcher(Path file, Duration quiet, Runnable onChange) {
+        Path name = file.getFileName();
+        this.names = Set.of(name, Path.of(name + ".log"), Path.of(name + ".lock"));
+        this.quietMillis = quiet.toMillis();
+        this.onChange = onChange;
+        Path dir = file.toAbsolutePath().getParent();
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot watch " + dir, e);
+        }
+        thread = new Thread(this::run, "todo-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (!relevant(watcher.take())) continue;
+                // debounce: wait until nothing has changed for the quiet period
+                WatchKey more;
+                while ((more = watcher.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) relevant(more);
+                notifyQuietly();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /** Consumes the key's events and tells whether any of them was about our files. */
+    private boolean relevant(WatchKey key) {
+        boolean ours = false;
+        for (WatchEvent<?> e : key.pollEvents()) {
+            if (e.kind() == StandardWatchEventKinds.OVERFLOW || names.contains((Path) e.context())) ours = true;
+        }
+        key.reset();
+        return ours;
+    }
+
+    private void notifyQuietly() {
+        try {
+            onChange.run();
+            lastError = null;
+        } catch (RuntimeException e) {
+            if (!String.valueOf(e.getMessage()).equals(lastError)) {
+                System.err.println("Reloading after an external change failed: " + e.getMessage());
+            }
+            lastError = String.valueOf(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to stop watching", e);
+        }
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,97 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+import be.todo.model.TaskCodec;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+final class JsonLinesStorage implements TaskStorage {
+    private final Path file;
+    private final boolean parallelLoad;
+    private final Durability durability;
+    private final TaskCodec codec = new TaskCodec();
+
+    JsonLinesStorage(Path file, boolean parallelLoad, Durability durability) {
+        this.file = file;
+        this.parallelLoad = parallelLoad;
+        this.durability = durability;
+    }
+
+    /** Nothing is cached; this only cleans up after a save that was interrupted by a crash. */
+    @Override
+    public void refresh() {
+        AtomicFiles.recover(file, JsonLinesStorage::isComplete);
+    }
+
+    /** A file last written with {@link StorageMode#LOG} may still have changes in its log. */
+    @Override
+    public boolean needsConversion() {
+        return LogStorage.hasPendingLog(file);
+    }
+
+    @Override
+    public synchronized void convert() {
+        if (needsConversion()) LogStorage.foldLog(file, parallelLoad, durability);
+    }
+
+    @Override
+    public synchronized List<Task> loadAll() {
+        ensureFile(file);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (BinaryStorage.isBinary(file)) throw new IOException("File is a binary snapshot, not JSON-lines");
+            if (ArenaStorage.isArena(file)) throw new IOException("File is a task arena, not JSON-lines");
+            StorageMetrics.BYTES_READ.add(ch.size());
+            try {
+                if (parallelLoad && ch.size() >= MappedTaskLoader.PARALLEL_THRESHOLD) return MappedTaskLoader.load(file);
+                List<Task> tasks = new ArrayList<>();
+                codec.decodeLines(ch, tasks::add);
+                tasks.sort(Comparator.comparingLong(Task::getId));
+                return tasks;
+            } catch (RuntimeException e) {
+                StorageMetrics.PARSE_FAILURES.increment();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read tasks: " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void storeAll(List<Task> tasks) {
+        ensureFile(file);
+        try {
+            AtomicFiles.write(file, durability, ch -> codec.encodeAll(tasks, ch));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write tasks: " + file, e);
+        }
+    }
+
+    /** A save is complete when every line parses; a torn write leaves a partial last line. */
+    private static boolean isComplete(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            new TaskCodec().decodeLines(ch, t -> { });
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static void ensureFile(Path file) {
+        try {
+            if (Files.notExists(file)) {
+                Path parent = file.getParent();
+                if (parent != null && Files.notExists(parent)) Files.createDirectories(parent);
+                Files.write(file, new byte[0], StandardOpenOption.CREATE);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create data file: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Snapshot plus append-only mutation log. The snapshot is a regular JSON-lines
+ * file; every change after it is one line in {@code <file>.log}:
+ * <pre>
+ *   P {json}           put (create or full replace)
+ *   D id               mark done
+ *   U id yyyy-mm-dd    set due date ("-" clears it)
+ *   R id               remove
+ * </pre>
+ * Records are absolute rather than relative, so replaying a record that is
+ * already part of the snapshot is harmless. The log is folded into the
+ * snapshot once it grows past the size of the dataset, which keeps writes at
+ * O(1) amortised.
+ * <p>
+ * The records produced by one call are written with a single append and, per
+ * {@link Durability}, forced once per call or after every record. Nothing is
+ * read until the first {@link #refresh()}. The other engines fold a non-empty
+ * log into the snapshot before they read the file (see {@link #foldLog}).
+ */
+final class LogStorage implements TaskStorage {
+    private static final int MIN_COMPACT_RECORDS = 10_000;
+
+    private final JsonLinesStorage snapshot;
+    private final Path file;
+    private final Path logFile;
+    private final Durability durability;
+    private final TreeMap<Long, Task> tasks = new TreeMap<>();
+    private final StringBuilder pending = new StringBuilder();
+    private FileChannel log;
+    private long records;
+    private boolean tornTail;
+    /** Identifies the snapshot the in-memory state was built from; null until the first refresh. */
+    private SnapshotKey snapshotKey;
+    /** Log bytes already applied to the in-memory state. */
+    private long logOffset;
+    /** Ids changed since the last {@link #drainChanged}; null after a full read, when they are not known. */
+    private Set<Long> changed;
+
+    LogStorage(Path file, boolean parallelLoad, Durability durability) {
+        this.snapshot = new JsonLinesStorage(file, parallelLoad, durability);
+        this.file = file;
+        this.durability = durability;
+        this.logFile = file.resolveSibling(file.getFileName() + ".log");
+    }
+
+    /**
+     * Catches up with the files, e.g. after another process wrote. While the
+     * snapshot is the one last read, only the log records appended since are
+     * applied, and {@link #drainChanged} reports the tasks they touched; after a
+     * compaction everything is read again.
+     */
+    @Override
+    public synchronized void refresh() {
+        closeLog(); // another process may have compacted, replacing the file we had open
+        if (snapshotKey != null && snapshotKey.equals(SnapshotKey.of(file)) && logOffset <= logSize()) {
+            tornTail = replay(logOffset);
+            return;
+        }
+        tasks.clear();
+        records = 0;
+        for (Task t : snapshot.loadAll()) tasks.put(t.getId(), t);
+        snapshotKey = SnapshotKey.of(file);
+        tornTail = replay(0);
+        changed = null;
+    }
+
+    @Override
+    public synchronized Set<Long> drainChanged() {
+        Set<Long> out = changed;
+        changed = new HashSet<>();
+        return out;
+    }
+
+    @Override
+    public synchronized List<Task> loadAll() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    @Override
+    public synchronized void storeAll(List<Task> all) {
+        tasks.clear();
+        for (Task t : all) tasks.put(t.getId(), t);
+        changed = null;
+        compact();
+    }
+
+    @Override
+    public synchronized Optional<Task> find(long id) {
+        return Optional.ofNullable(tasks.get(id));
+    }
+
+    @Override
+    public synchronized long maxId() {
+        return tasks.isEmpty() ? 0 : tasks.lastKey();
+    }
+
+    @Override
+    public synchronized void insert(Task task) {
+        tasks.put(task.getId(), task);
+        markChanged(task.getId());
+        append("P " + task.toJson());
+        commit();
+    }
+
+    @Override
+    public synchronized boolean update(long id, UnaryOperator<Task> fn) {
+        Task prev = tasks.get(id);
+        if (prev == null) return false;
+        Task next = fn.apply(prev);
+        if (next == prev) return false;
+        tasks.put(id, next);
+        markChanged(id);
+        append(diff(prev, next));
+        commit();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(long id) {
+        if (tasks.remove(id) == null) return false;
+        markChanged(id);
+        append("R " + id);
+        commit();
+        return true;
+    }
+
+    @Override
+    public synchronized int deleteIf(Predicate<Task> filter) {
+        int removed = 0;
+        for (Iterator<Task> it = tasks.values().iterator(); it.hasNext(); ) {
+            Task t = it.next();
+            if (filter.test(t)) {
+                it.remove();
+                markChanged(t.getId());
+                append("R " + t.getId());
+                removed++;
+            }
+        }
+        commit();
+        return removed;
+    }
+
+    @Override
+    public synchronized void applyChanges(Collection<Task> upserts, Collection<Long> removedIds) {
+        for (Task t : upserts) {
+            Task prev = tasks.put(t.getId(), t);
+            markChanged(t.getId());
+            if (prev == null) append("P " + t.toJson());
+            else if (prev != t) append(diff(prev, t));
+        }
+        for (long id : removedIds) {
+            if (tasks.remove(id) != null) {
+                markChanged(id);
+                append("R " + id);
+            }
+        }
+        commit();
+    }
+
+    @Override
+    public synchronized void compact() {
+        pending.setLength(0); // everything is in the snapshot about to be written
+        closeLog();
+        snapshot.storeAll(new ArrayList<>(tasks.values()));
+        try {
+            Files.deleteIfExists(logFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to truncate log: " + logFile, e);
+        }
+        records = 0;
+        logOffset = 0;
+        snapshotKey = SnapshotKey.of(file);
+    }
+
+    @Override
+    public synchronized void close() {
+        closeLog();
+    }
+
+    /** True if {@code file} has log records not yet folded into its snapshot, which the other engines would not see. */
+    static boolean hasPendingLog(Path file) {
+        Path log = file.resolveSibling(file.getFileName() + ".log");
+        try {
+            return Files.exists(log) && Files.size(log) > 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read log: " + log, e);
+        }
+    }
+
+    /**
+     * Folds the log of a file written in this format into its snapshot, so that an
+     * engine reading only the snapshot sees every change. The log is kept as
+     * {@code .log.bak}. Called from the other engines' {@link #convert}.
+     */
+    static void foldLog(Path file, boolean parallelLoad, Durability durability) {
+        Path log = file.resolveSibling(file.getFileName() + ".log");
+        LogStorage storage = new LogStorage(file, parallelLoad, durability);
+        try {
+            storage.refresh();
+            Files.copy(log, log.resolveSibling(log.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            storage.compact();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to convert tasks: " + file, e);
+        } finally {
+            storage.close();
+        }
+    }
+
+    private static String diff(Task prev, Task next) {
+        boolean sameIdentity = prev.getId() == next.getId()
+                && prev.getTitle().equals(next.getTitle())
+                && prev.getCreatedAt().equals(next.getCreatedAt());
+        boolean sameDue = Objects.equals(prev.getDue(), next.getDue());
+        if (sameIdentity && sameDue && !prev.isDone() && next.isDone()) return "D " + next.getId();
+        if (sameIdentity && prev.isDone() == next.isDone()) {
+            return "U " + next.getId() + " " + (next.getDue() == null ? "-" : next.getDue());
+        }
+        return "P " + next.toJson();
+    }
+
+    private void append(String record) {
+        if (tornTail) {
+            // new records must not be glued onto a partial line; the map already holds this change
+            tornTail = false;
+            compact();
+        }
+        pending.append(record).append('\n');
+        records++;
+        if (durability == Durability.PER_WRITE) writePending(true);
+    }
+
+    /** Ends one repository call: writes its records in one go and compacts if due. */
+    private void commit() {
+        writePending(durability == Durability.PER_BATCH);
+        if (records >= Math.max(MIN_COMPACT_RECORDS, tasks.size())) compact();
+    }
+
+    private void writePending(boolean force) {
+        if (pending.length() == 0) return;
+        try {
+            if (log == null) {
+                boolean created = Files.notExists(logFile);
+                log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                if (created && durability != Durability.NONE) AtomicFiles.syncDirectory(logFile);
+            }
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(pending));
+            StorageMetrics.BYTES_WRITTEN.add(bytes.remaining());
+            while (bytes.hasRemaining()) log.write(bytes);
+            pending.setLength(0);
+            logOffset = log.size();
+            if (force) log.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to log: " + logFile, e);
+        }
+    }
+
+    /**
+     * Applies the log from byte {@code from} on top of the current state. A log
+     * that does not end with a newline was cut short by a crash; its last record
+     * is dropped and true is returned.
+     */
+    private boolean replay(long from) {
+        if (Files.notExists(logFile)) {
+            logOffset = 0;
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long end = completeEnd(ch, from);
+            boolean torn = end < ch.size();
+            StorageMetrics.BYTES_READ.add(end - from);
+            BufferedReader in = new BufferedReader(Channels.newReader(ch.position(from), StandardCharsets.UTF_8));
+            String line = in.readLine();
+            while (line != null) {
+                String next = in.readLine();
+                if (next == null && torn) break;
+                if (!line.isBlank()) {
+                    try {
+                        markChanged(apply(tasks, line));
+                        records++;
+                    } catch (RuntimeException e) {
+                        StorageMetrics.PARSE_FAILURES.increment();
+                        throw new RuntimeException("Corrupt log record in " + logFile + ": " + line, e);
+                    }
+                }
+                line = next;
+            }
+            logOffset = end;
+            return torn;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read log: " + logFile, e);
+        }
+    }
+
+    /** Offset just past the last newline at or after {@code from}, or {@code from} if there is none. */
+    private static long completeEnd(FileChannel ch, long from) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long end = ch.size();
+        while (end > from) {
+            int n = (int) Math.min(window.capacity(), end - from);
+            window.clear().limit(n);
+            while (window.hasRemaining()) {
+                if (ch.read(window, end - n + window.position()) < 0) break;
+            }
+            for (int i = window.position() - 1; i >= 0; i--) {
+                if (window.get(i) == '\n') return end - n + i + 1;
+            }
+            end -= n;
+        }
+        return from;
+    }
+
+    private long logSize() {
+        try {
+            return Files.exists(logFile) ? Files.size(logFile) : 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read log: " + logFile, e);
+        }
+    }
+
+    private void markChanged(long id) {
+        if (changed != null) changed.add(id);
+    }
+
+    /** Applies one log record and returns the id of the task it is about. */
+    private static long apply(Map<Long, Task> tasks, String record) {
+        char op = record.charAt(0);
+        String arg = record.substring(2);
+        switch (op) {
+            case 'P' -> {
+                Task t = Task.fromJson(arg);
+                tasks.put(t.getId(), t);
+                return t.getId();
+            }
+            case 'D' -> {
+                long id = Long.parseLong(arg);
+                tasks.computeIfPresent(id, (k, t) -> t.withDone(true));
+                return id;
+            }
+            case 'U' -> {
+                int sp = arg.indexOf(' ');
+                String date = arg.substring(sp + 1);
+                LocalDate due = "-".equals(date) ? null : LocalDate.parse(date);
+                long id = Long.parseLong(arg.substring(0, sp));
+                tasks.computeIfPresent(id, (k, t) -> t.withDue(due));
+                return id;
+            }
+            case 'R' -> {
+                long id = Long.parseLong(arg);
+                tasks.remove(id);
+                return id;
+            }
+            default -> throw new IllegalArgumentException("Unknown log record: " + record);
+        }
+    }
+
+    private void closeLog() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close log: " + logFile, e);
+        } finally {
+            log = null;
+        }
+    }
+
+    /**
+     * Tells snapshots apart: a compaction renames a new file into place, which
+     * changes at least one of these even if the file system reuses the inode.
+     */
+    private record SnapshotKey(Object fileKey, FileTime modified, long size) {
+        static SnapshotKey of(Path file) {
+            try {
+                BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+                return new SnapshotKey(a.fileKey(), a.lastModifiedTime(), a.size());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+import be.todo.model.TaskCodec;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a JSON-lines file by memory-mapping it and parsing newline-aligned
+ * chunks on the common fork/join pool. Each chunk is sorted by id and the
+ * chunks are merged pairwise, left before right, so the result is exactly what
+ * a sequential read followed by a stable sort produces.
+ */
+final class MappedTaskLoader {
+    /** Files smaller than this are not worth splitting. */
+    static final long PARALLEL_THRESHOLD = 1 << 20;
+    private static final int CHUNK = 4 << 20;
+    private static final long MAX_REGION = 1L << 30;
+
+    private MappedTaskLoader() { }
+
+    static List<Task> load(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            List<Task> out = new ArrayList<>();
+            long start = 0;
+            while (start < size) {
+                long length = Math.min(MAX_REGION, size - start);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int end = (int) length;
+                if (start + length < size) {
+                    // stop the region after its last complete line; the rest starts the next one
+                    while (end > 0 && buf.get(end - 1) != '\n') end--;
+                    if (end == 0) throw new IOException("Line longer than " + MAX_REGION + " bytes in " + file);
+                }
+                out = merge(out, ForkJoinPool.commonPool().invoke(new ChunkTask(buf, 0, end)));
+                start += end;
+            }
+            return out;
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveTask<List<Task>> {
+        private final MappedByteBuffer buf;
+        private final int from;
+        private final int to;
+
+        ChunkTask(MappedByteBuffer buf, int from, int to) {
+            this.buf = buf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Task> compute() {
+            if (to - from > CHUNK) {
+                int mid = from + (to - from) / 2;
+                while (mid < to && buf.get(mid - 1) != '\n') mid++;
+                if (mid < to) {
+                    ChunkTask left = new ChunkTask(buf, from, mid);
+                    left.fork();
+                    List<Task> right = new ChunkTask(buf, mid, to).compute();
+                    return merge(left.join(), right);
+                }
+            }
+            List<Task> tasks = new ArrayList<>();
+            TaskCodec.shared().decodeLines(buf, from, to, tasks::add);
+            tasks.sort(Comparator.comparingLong(Task::getId));
+            return tasks;
+        }
+    }
+
+    /** Stable merge of two id-sorted lists; on equal ids the left element comes first. */
+    static List<Task> merge(List<Task> left, List<Task> right) {
+        if (left.isEmpty()) return right;
+        if (right.isEmpty()) return left;
+        if (left.get(left.size() - 1).getId() <= right.get(0).getId()) {
+            left.addAll(right);
+            return left;
+        }
+        List<Task> out = new ArrayList<>(left.size() + right.size());
+        int i = 0, j = 0;
+        while (i < left.size() && j < right.size()) {
+            if (right.get(j).getId() < left.get(i).getId()) out.add(right.get(j++));
+            else out.add(left.get(i++));
+        }
+        out.addAll(left.subList(i, left.size()));
+        out.addAll(right.subList(j, right.size()));
+        return out;
+    }
+}
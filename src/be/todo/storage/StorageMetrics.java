@@ -0,0 +1,25 @@
+package be.todo.storage;
+
+import be.todo.metrics.Histogram;
+import be.todo.metrics.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the storage engines record in {@link Metrics#global()}. Bytes are counted
+ * where the engines read and write the data and log files, not the lock file; a
+ * parse failure is a file or log record that could not be decoded.
+ */
+final class StorageMetrics {
+    static final LongAdder BYTES_READ = Metrics.global().counter("storage.bytesRead");
+    static final LongAdder BYTES_WRITTEN = Metrics.global().counter("storage.bytesWritten");
+    static final LongAdder PARSE_FAILURES = Metrics.global().counter("storage.parseFailures");
+    /** Tasks returned by each whole-file load. */
+    static final Histogram TASKS_LOADED = Metrics.global().histogram("storage.tasksLoaded");
+
+    private StorageMetrics() { }
+
+    static Histogram timer(String operation) {
+        return Metrics.global().timer("storage." + operation);
+    }
+}
@@ -0,0 +1,21 @@
+package be.todo.storage;
+
+public enum StorageMode {
+    /** One JSON object per line; every change rewrites the whole file. */
+    JSON_LINES,
+    /** JSON-lines snapshot plus an append-only mutation log next to it. */
+    LOG,
+    /** Fixed-layout binary snapshot with a checksummed header; JSON-lines files are migrated on load. */
+    BINARY,
+    /**
+     * Compact on-disk format of fixed-size task slots, updated in place through a
+     * memory mapping; other formats are converted before first use. Not available
+     * on Windows.
+     */
+    ARENA;
+
+    /** False for the arena on Windows, which refuses to rename a file over one that is still mapped. */
+    public boolean isSupported() {
+        return this != ARENA || !System.getProperty("os.name", "").startsWith("Windows");
+    }
+}
@@ -0,0 +1,29 @@
+package be.todo.storage;
+
+import java.util.Objects;
+
+/**
+ * How a {@link TaskRepository} stores its file.
+ *
+ * @param mode         on-disk layout
+ * @param parallelLoad memory-map the file and parse it on the fork/join pool
+ * @param durability   when writes are forced to disk
+ * @param onConflict   what a write based on an outdated snapshot does
+ */
+public record StorageOptions(StorageMode mode, boolean parallelLoad, Durability durability, ConflictPolicy onConflict) {
+
+    public StorageOptions {
+        Objects.requireNonNull(mode, "mode");
+        Objects.requireNonNull(durability, "durability");
+        Objects.requireNonNull(onConflict, "onConflict");
+    }
+
+    public static StorageOptions defaults() {
+        return new StorageOptions(StorageMode.JSON_LINES, false, Durability.PER_BATCH, ConflictPolicy.REBASE);
+    }
+
+    public StorageOptions withMode(StorageMode newMode) { return new StorageOptions(newMode, parallelLoad, durability, onConflict); }
+    public StorageOptions withParallelLoad(boolean newParallelLoad) { return new StorageOptions(mode, newParallelLoad, durability, onConflict); }
+    public StorageOptions withDurability(Durability newDurability) { return new StorageOptions(mode, parallelLoad, newDurability, onConflict); }
+    public StorageOptions withOnConflict(ConflictPolicy newOnConflict) { return new StorageOptions(mode, parallelLoad, durability, newOnConflict); }
+}
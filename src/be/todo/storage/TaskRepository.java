@@ -1,72 +1,391 @@
 package be.todo.storage;
 
+import be.todo.metrics.Histogram;
 import be.todo.model.Task;
+import be.todo.model.TaskCodec;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Access to one data file. Several processes may share the file: reads take a
+ * shared lock and writes an exclusive one (see {@link VersionLock}), and every
+ * write advances a file version. Plain calls always act on the current file;
+ * {@link #saveChanges(long, Collection)} is the optimistic variant
+ * for callers that work from an earlier {@link #load() snapshot}.
+ * <p>
+ * Every operation records its latency, lock wait included, in a timer named
+ * {@code storage.<method>}; see {@link StorageMetrics} for the I/O counters.
+ */
+public class TaskRepository implements AutoCloseable {
+    private static final Histogram FIND_ALL = StorageMetrics.timer("findAll");
+    private static final Histogram LOAD = StorageMetrics.timer("load");
+    private static final Histogram CHANGES_SINCE = StorageMetrics.timer("changesSince");
+    private static final Histogram SAVE_ALL = StorageMetrics.timer("saveAll");
+    private static final Histogram FIND_BY_ID = StorageMetrics.timer("findById");
+    private static final Histogram NEXT_ID = StorageMetrics.timer("nextId");
+    private static final Histogram CREATE = StorageMetrics.timer("create");
+    private static final Histogram UPDATE = StorageMetrics.timer("update");
+    private static final Histogram DELETE = StorageMetrics.timer("delete");
+    private static final Histogram DELETE_IF = StorageMetrics.timer("deleteIf");
+    private static final Histogram SAVE_CHANGES = StorageMetrics.timer("saveChanges");
+    private static final Histogram COMPACT = StorageMetrics.timer("compact");
+    private static final Histogram CONVERT = StorageMetrics.timer("convert");
 
-public class TaskRepository {
     private final Path file;
+    private final TaskStorage storage;
+    private final ConflictPolicy conflictPolicy;
+    private final VersionLock lock;
+    /** File version the storage engine's cached state reflects; -1 until first use. */
+    private volatile long storageVersion = -1;
+    /** Whether the file has been checked to be in the engine's format, and converted if it was not. */
+    private volatile boolean converted;
+    /** File version at the last {@link TaskStorage#drainChanged}; -1 before the first. Guarded by {@link #storage}. */
+    private long drainedVersion = -1;
 
     public TaskRepository(Path file) {
+        this(file, StorageOptions.defaults());
+    }
+
+    public TaskRepository(Path file, StorageMode mode) {
+        this(file, StorageOptions.defaults().withMode(mode));
+    }
+
+    public TaskRepository(Path file, StorageOptions options) {
+        if (!options.mode().isSupported()) {
+            throw new IllegalArgumentException("Storage mode " + options.mode() + " is not supported on this platform: " + file);
+        }
         this.file = file;
+        this.conflictPolicy = options.onConflict();
+        this.storage = switch (options.mode()) {
+            case JSON_LINES -> new JsonLinesStorage(file, options.parallelLoad(), options.durability());
+            case LOG -> new LogStorage(file, options.parallelLoad(), options.durability());
+            case BINARY -> new BinaryStorage(file, options.parallelLoad(), options.durability());
+            case ARENA -> new ArenaStorage(file, options.parallelLoad(), options.durability());
+        };
+        this.lock = new VersionLock(file);
+    }
+
+    /** Tasks together with the file version they were read at. */
+    public record Snapshot(List<Task> tasks, long version) { }
+
+    /**
+     * The tasks that changed up to {@code version}, mapped by id to their value
+     * then, or to null if they were removed.
+     */
+    public record Delta(Map<Long, Task> tasks, long version) { }
+
+    /**
+     * One task's change since a snapshot: {@code before} is null for a created
+     * task, {@code after} is null for a removed one.
+     */
+    public record Change(Task before, Task after) {
+        public long id() { return after != null ? after.getId() : before.getId(); }
     }
 
+    /**
+     * Result of a versioned write.
+     *
+     * @param version  the file version after the write
+     * @param adjusted tasks that were stored differently from how they were submitted because
+     *                 of a rebase (merged with another writer's edit, or moved to a free id), keyed
+     *                 by submitted id; a null value means the task no longer exists
+     */
+    public record Commit(long version, Map<Long, Task> adjusted) { }
+
+    /** Writes {@code tasks} to {@code target} as JSON-lines, whatever format this repository uses. */
+    public static void exportJson(List<Task> tasks, Path target) {
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new TaskCodec().encodeAll(tasks, ch);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to export tasks: " + target, e);
+        }
+    }
+
+    public Path getFile() { return file; }
+
     public List<Task> findAll() {
-        ensureFile();
+        List<Task> tasks = read(FIND_ALL, storage::loadAll);
+        StorageMetrics.TASKS_LOADED.record(tasks.size());
+        return tasks;
+    }
+
+    public Snapshot load() {
+        convertIfNeeded();
+        long start = System.nanoTime();
         try {
-            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
-            List<Task> tasks = new ArrayList<>(lines.size());
-            for (String line : lines) {
-                String t = line.trim();
-                if (!t.isEmpty()) tasks.add(Task.fromJson(t));
-            }
-            tasks.sort(Comparator.comparingLong(Task::getId));
-            return tasks;
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read tasks: " + file, e);
+            Snapshot snapshot = lock.shared(version -> {
+                sync(version);
+                synchronized (storage) {
+                    storage.drainChanged();
+                    drainedVersion = version;
+                }
+                return new Snapshot(storage.loadAll(), version);
+            });
+            StorageMetrics.TASKS_LOADED.record(snapshot.tasks().size());
+            return snapshot;
+        } finally {
+            LOAD.recordSince(start);
         }
     }
 
-    public void saveAll(List<Task> tasks) {
-        ensureFile();
-        List<String> lines = new ArrayList<>(tasks.size());
-        for (Task t : tasks) lines.add(t.toJson());
+    /**
+     * The tasks changed since {@code sinceVersion}, for a caller that keeps the
+     * tasks of an earlier {@link #load()} up to date. Empty if the engine cannot
+     * tell which tasks changed, and the caller has to load them all. Changes are
+     * reported once, so one repository serves one such caller; the delta may
+     * include tasks that are back to their old value.
+     */
+    public Optional<Delta> changesSince(long sinceVersion) {
+        convertIfNeeded();
+        long start = System.nanoTime();
         try {
-            Files.write(file, lines, StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to write tasks: " + file, e);
+            return lock.shared(version -> {
+                sync(version);
+                synchronized (storage) {
+                    Set<Long> ids = storage.drainChanged();
+                    boolean complete = ids != null && drainedVersion >= 0 && drainedVersion <= sinceVersion;
+                    drainedVersion = version;
+                    if (!complete) return Optional.<Delta>empty();
+                    Map<Long, Task> tasks = new HashMap<>();
+                    for (long id : ids) tasks.put(id, storage.find(id).orElse(null));
+                    return Optional.of(new Delta(tasks, version));
+                }
+            });
+        } finally {
+            CHANGES_SINCE.recordSince(start);
         }
     }
 
+    /** The current file version; changes whenever any process writes the file. */
+    public long version() {
+        return lock.shared(version -> version);
+    }
+
+    public void saveAll(List<Task> tasks) {
+        write(SAVE_ALL, () -> {
+            storage.storeAll(tasks);
+            return null;
+        });
+    }
+
+    public Optional<Task> findById(long id) {
+        return read(FIND_BY_ID, () -> storage.find(id));
+    }
+
     public long nextId() {
-        return findAll().stream().mapToLong(Task::getId).max().orElse(0) + 1;
+        return read(NEXT_ID, () -> storage.maxId() + 1);
     }
 
     public Task create(String title) {
-        long id = nextId();
-        Task t = new Task(id, title, false, OffsetDateTime.now(), null);
-        List<Task> all = findAll();
-        all.add(t);
-        saveAll(all);
-        return t;
+        return write(CREATE, () -> {
+            Task t = new Task(storage.maxId() + 1, title, false, OffsetDateTime.now(), null);
+            storage.insert(t);
+            return t;
+        });
     }
 
-    private void ensureFile() {
+    /**
+     * Replaces the task with the given id by {@code fn(task)}. Returning the same
+     * instance from {@code fn} means "no change" and nothing is written.
+     *
+     * @return true if the task exists and was changed
+     */
+    public boolean update(long id, UnaryOperator<Task> fn) {
+        return write(UPDATE, () -> storage.update(id, fn));
+    }
+
+    public boolean delete(long id) {
+        return write(DELETE, () -> storage.delete(id));
+    }
+
+    public int deleteIf(Predicate<Task> filter) {
+        return write(DELETE_IF, () -> storage.deleteIf(filter));
+    }
+
+    /** Applies a batch of per-task changes to the current file, whoever wrote it last. */
+    public void saveChanges(Collection<Task> upserts, Collection<Long> removedIds) {
+        if (upserts.isEmpty() && removedIds.isEmpty()) return;
+        write(SAVE_CHANGES, () -> {
+            storage.applyChanges(upserts, removedIds);
+            return null;
+        });
+    }
+
+    /**
+     * Applies a batch of per-task changes that were made against {@code baseVersion}.
+     * If the file has moved on since, the configured {@link ConflictPolicy} decides
+     * between a {@link ConflictException} and rebasing the changes onto the file.
+     */
+    public Commit saveChanges(long baseVersion, Collection<Change> changes) {
+        long start = System.nanoTime();
         try {
-            if (Files.notExists(file)) {
-                Path parent = file.getParent();
-                if (parent != null && Files.notExists(parent)) Files.createDirectories(parent);
-                Files.write(file, new byte[0], StandardOpenOption.CREATE);
+            return saveChangesLocked(baseVersion, changes);
+        } finally {
+            SAVE_CHANGES.recordSince(start);
+        }
+    }
+
+    private Commit saveChangesLocked(long baseVersion, Collection<Change> changes) {
+        convertIfNeeded();
+        return lock.exclusive(version -> {
+            sync(version);
+            if (version != baseVersion && conflictPolicy == ConflictPolicy.FAIL) {
+                throw new ConflictException(file.toString(), baseVersion, version);
+            }
+            Map<Long, Task> adjusted = new HashMap<>();
+            List<Task> upserts = new ArrayList<>();
+            List<Long> removals = new ArrayList<>();
+            if (version == baseVersion) {
+                for (Change c : changes) {
+                    if (c.after() != null) upserts.add(c.after());
+                    else removals.add(c.id());
+                }
+            } else {
+                rebase(changes, upserts, removals, adjusted);
+            }
+            if (!upserts.isEmpty() || !removals.isEmpty()) storage.applyChanges(upserts, removals);
+            storageVersion = version + 1;
+            return new Commit(version + 1, adjusted);
+        });
+    }
+
+    /**
+     * Three-way merge of our changes onto the file as it is now. A field we changed
+     * wins, every other field keeps the other writer's value; a task the other
+     * writer removed stays removed; a task we created moves off an id that a
+     * different task took meanwhile.
+     */
+    private void rebase(Collection<Change> changes, List<Task> upserts, List<Long> removals, Map<Long, Task> adjusted) {
+        Map<Long, Task> current = new HashMap<>();
+        long maxId = 0;
+        for (Task t : storage.loadAll()) {
+            current.put(t.getId(), t);
+            maxId = Math.max(maxId, t.getId());
+        }
+        for (Change c : changes) maxId = Math.max(maxId, c.id());
+        for (Change c : changes) {
+            Task theirs = current.get(c.id());
+            boolean sameTask = theirs != null && theirs.getCreatedAt().equals(
+                    (c.before() != null ? c.before() : c.after()).getCreatedAt());
+            if (c.before() == null) {
+                if (theirs == null || sameTask) {
+                    upserts.add(c.after());
+                } else {
+                    Task moved = withId(c.after(), ++maxId);
+                    upserts.add(moved);
+                    adjusted.put(c.id(), moved);
+                }
+            } else if (c.after() == null) {
+                if (sameTask) removals.add(c.id());
+            } else if (!sameTask) {
+                adjusted.put(c.id(), null);
+            } else {
+                Task merged = merge(c.before(), c.after(), theirs);
+                upserts.add(merged);
+                if (merged != c.after()) adjusted.put(c.id(), merged);
+            }
+        }
+    }
+
+    private static Task merge(Task base, Task ours, Task theirs) {
+        String title = !ours.getTitle().equals(base.getTitle()) ? ours.getTitle() : theirs.getTitle();
+        boolean done = ours.isDone() != base.isDone() ? ours.isDone() : theirs.isDone();
+        LocalDate due = !Objects.equals(ours.getDue(), base.getDue()) ? ours.getDue() : theirs.getDue();
+        if (title.equals(ours.getTitle()) && done == ours.isDone() && Objects.equals(due, ours.getDue())) return ours;
+        return new Task(ours.getId(), title, done, ours.getCreatedAt(), due);
+    }
+
+    private static Task withId(Task t, long id) {
+        return new Task(id, t.getTitle(), t.isDone(), t.getCreatedAt(), t.getDue());
+    }
+
+    public void compact() {
+        write(COMPACT, () -> {
+            storage.compact();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        storage.close();
+        lock.close();
+    }
+
+    /**
+     * Converts the file to the engine's format before its first use here. The
+     * check takes the shared lock; the conversion itself is a write, so it takes
+     * the exclusive one and advances the version.
+     */
+    private void convertIfNeeded() {
+        if (converted) return;
+        if (lock.shared(version -> storage.needsConversion())) {
+            locked(CONVERT, () -> {
+                storage.convert();
+                return null;
+            });
+        }
+        converted = true;
+    }
+
+    /** Runs {@code body} under the shared lock and records how long that took in {@code timer}. */
+    private <T> T read(Histogram timer, Supplier<T> body) {
+        convertIfNeeded();
+        long start = System.nanoTime();
+        try {
+            return lock.shared(version -> {
+                sync(version);
+                return body.get();
+            });
+        } finally {
+            timer.recordSince(start);
+        }
+    }
+
+    private <T> T write(Histogram timer, Supplier<T> body) {
+        convertIfNeeded();
+        return locked(timer, body);
+    }
+
+    private <T> T locked(Histogram timer, Supplier<T> body) {
+        long start = System.nanoTime();
+        try {
+            return lock.exclusive(version -> {
+                sync(version);
+                T result = body.get();
+                storageVersion = version + 1;
+                return result;
+            });
+        } finally {
+            timer.recordSince(start);
+        }
+    }
+
+    /** Brings the engine's cached state up to {@code version} if another process wrote since. */
+    private void sync(long version) {
+        if (storageVersion == version) return;
+        synchronized (storage) {
+            if (storageVersion != version) {
+                storage.refresh();
+                storageVersion = version;
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Cannot create data file: " + file, e);
         }
     }
 }
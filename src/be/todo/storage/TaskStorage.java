@@ -0,0 +1,120 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * On-disk engine behind {@link TaskRepository}. The defaults implement every
+ * single-task operation as a full load followed by a full store; engines that
+ * can do better override them.
+ */
+interface TaskStorage extends Closeable {
+
+    /** All tasks, sorted by id. The returned list is owned by the caller. */
+    List<Task> loadAll();
+
+    void storeAll(List<Task> tasks);
+
+    default Optional<Task> find(long id) {
+        for (Task t : loadAll()) if (t.getId() == id) return Optional.of(t);
+        return Optional.empty();
+    }
+
+    default long maxId() {
+        return loadAll().stream().mapToLong(Task::getId).max().orElse(0);
+    }
+
+    default void insert(Task task) {
+        List<Task> all = loadAll();
+        all.add(task);
+        storeAll(all);
+    }
+
+    default boolean update(long id, UnaryOperator<Task> fn) {
+        List<Task> all = loadAll();
+        boolean changed = false;
+        List<Task> updated = new ArrayList<>(all.size());
+        for (Task t : all) {
+            Task next = t.getId() == id ? fn.apply(t) : t;
+            if (next != t) changed = true;
+            updated.add(next);
+        }
+        if (changed) storeAll(updated);
+        return changed;
+    }
+
+    default boolean delete(long id) {
+        return deleteIf(t -> t.getId() == id) > 0;
+    }
+
+    default int deleteIf(Predicate<Task> filter) {
+        List<Task> all = loadAll();
+        int before = all.size();
+        all.removeIf(filter);
+        int removed = before - all.size();
+        if (removed > 0) storeAll(all);
+        return removed;
+    }
+
+    /**
+     * Writes a batch of changes: every task in {@code upserts} replaces (or adds)
+     * the task with the same id, then every id in {@code removedIds} is dropped.
+     */
+    default void applyChanges(Collection<Task> upserts, Collection<Long> removedIds) {
+        Map<Long, Task> changed = new HashMap<>();
+        for (Task t : upserts) changed.put(t.getId(), t);
+        Set<Long> removed = new HashSet<>(removedIds);
+        List<Task> all = loadAll();
+        List<Task> updated = new ArrayList<>(all.size() + changed.size());
+        for (Task t : all) {
+            if (removed.contains(t.getId())) continue;
+            Task next = changed.remove(t.getId());
+            updated.add(next != null ? next : t);
+        }
+        for (Task t : changed.values()) if (!removed.contains(t.getId())) updated.add(t);
+        updated.sort(Comparator.comparingLong(Task::getId));
+        storeAll(updated);
+    }
+
+    /**
+     * True if the file is in another format, or missing where this engine needs
+     * initial content, so that {@link #convert} must run before it can be read.
+     * Called under the shared lock.
+     */
+    default boolean needsConversion() { return false; }
+
+    /**
+     * Rewrites the file in this engine's format, if {@link #needsConversion} still
+     * says so. Called under the exclusive lock, so that processes opening the same
+     * file never convert it at once.
+     */
+    default void convert() { }
+
+    /** Drops any state cached from the file; called when another process may have written it. */
+    default void refresh() { }
+
+    /**
+     * Ids of the tasks changed since the previous call, by this process or by a
+     * {@link #refresh}, or null if the engine does not know them; then any task
+     * may have changed. Engines that reread the whole file return null.
+     */
+    default Set<Long> drainChanged() { return null; }
+
+    /** Folds any incremental state into a single snapshot. No-op by default. */
+    default void compact() { }
+
+    @Override
+    default void close() { }
+}
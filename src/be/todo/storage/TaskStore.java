@@ -0,0 +1,657 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Resident copy of a {@link TaskRepository}: the file is read once, queries are
+ * answered from memory and changes are written back in batches by a background
+ * writer. A zero flush interval writes every change through synchronously.
+ * <p>
+ * Safe for any number of threads without locking: tasks are immutable and each
+ * change is a compare-and-set of one map entry, retried if another thread got
+ * there first. Reads never block and see every change that completed before
+ * they started; {@link #all()} and the partitions are weakly consistent while
+ * writers are active.
+ * <p>
+ * Batches are written against the file version they are based on, so changes
+ * made by other processes in the meantime are rebased onto or rejected as the
+ * repository's {@link ConflictPolicy} says.
+ */
+public final class TaskStore implements AutoCloseable {
+    /** Base recorded for a task that did not exist when it was last written. */
+    private static final Task CREATED = new Task(0, "", false, OffsetDateTime.MIN, null);
+
+    private final TaskRepository repo;
+    private final ConcurrentMap<Long, Task> byId = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Task> pending = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Long, Task> done = new ConcurrentSkipListMap<>();
+    /**
+     * Tasks with a due date, per partition, ordered by due date and id. Entries can
+     * briefly outlive a change to their task; readers skip (and drop) any entry
+     * whose task is no longer the current one.
+     */
+    private final ConcurrentNavigableMap<DueKey, Task> pendingByDue = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<DueKey, Task> doneByDue = new ConcurrentSkipListMap<>();
+    private final AtomicInteger doneCount = new AtomicInteger();
+    /** Number of pending tasks per due date, for the overdue and due-today counts. */
+    private final ConcurrentNavigableMap<LocalDate, AtomicInteger> pendingPerDue = new ConcurrentSkipListMap<>();
+    private final AtomicLong maxId = new AtomicLong();
+    private final LongAdder changes = new LongAdder();
+    /**
+     * Unwritten tasks, mapped to their value as last written (or loaded). The
+     * value to write is whatever {@link #byId} holds when the batch is taken.
+     */
+    private final ConcurrentMap<Long, Task> dirty = new ConcurrentHashMap<>();
+    /** Built on the first search and maintained by {@link #changed} from then on. */
+    private volatile TitleIndex titles;
+    private volatile boolean titlesBuilt;
+    private final Object titlesLock = new Object();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService writer;
+    /** Nesting depth of {@link #batch} on the calling thread; write-through waits until it is back to zero. */
+    private final ThreadLocal<int[]> batchDepth = ThreadLocal.withInitial(() -> new int[1]);
+    /** Outermost {@link #batch} calls running on any thread; the background writer waits for none to be. */
+    private final AtomicInteger openBatches = new AtomicInteger();
+    private final List<Runnable> flushListeners = new CopyOnWriteArrayList<>();
+    /** File version that the bases recorded in {@link #dirty} were read at. */
+    private volatile long version;
+    /**
+     * Latest file version whose every change is reflected here. It runs ahead of
+     * {@link #version} after a reload that had to keep local changes' old bases.
+     */
+    private volatile long syncedVersion;
+    private String lastFlushError;
+
+    public TaskStore(TaskRepository repo, Duration flushInterval) {
+        this.repo = repo;
+        TaskRepository.Snapshot snapshot = repo.load();
+        for (Task t : snapshot.tasks()) {
+            byId.put(t.getId(), t);
+            (t.isDone() ? done : pending).put(t.getId(), t);
+            if (t.getDue() != null) (t.isDone() ? doneByDue : pendingByDue).put(DueKey.of(t), t);
+            if (t.isDone()) doneCount.incrementAndGet();
+            else if (t.getDue() != null) countDue(t.getDue(), 1);
+            maxId.accumulateAndGet(t.getId(), Math::max);
+        }
+        version = syncedVersion = snapshot.version();
+        if (flushInterval.isZero()) {
+            writer = null;
+        } else {
+            writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "todo-writer");
+                t.setDaemon(true);
+                return t;
+            });
+            long ms = flushInterval.toMillis();
+            writer.scheduleWithFixedDelay(this::flushQuietly, ms, ms, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Optional<Task> get(long id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    /** All tasks sorted by id, merged from the two partitions. */
+    public List<Task> all() {
+        List<Task> out = new ArrayList<>(byId.size());
+        new Merge(pending.values().iterator(), done.values().iterator(), BY_ID).forEachRemaining(out::add);
+        return out;
+    }
+
+    /**
+     * Tasks from the chosen partitions with an id above {@code afterId}, in id
+     * order. The stream walks the partitions lazily, so it holds no copy of the
+     * tasks; like {@link #all()} it is weakly consistent while writers are active.
+     */
+    public Stream<Task> stream(boolean includePending, boolean includeDone, long afterId) {
+        Iterator<Task> p = includePending ? pending.tailMap(afterId, false).values().iterator() : Collections.emptyIterator();
+        Iterator<Task> d = includeDone ? done.tailMap(afterId, false).values().iterator() : Collections.emptyIterator();
+        Iterator<Task> it = includePending && includeDone ? new Merge(p, d, BY_ID) : includePending ? p : d;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    public List<Task> pending() { return new ArrayList<>(pending.values()); }
+    public List<Task> done() { return new ArrayList<>(done.values()); }
+    /**
+     * Tasks due in {@code [from, to)} from the chosen partitions, ordered by due
+     * date and then id; a null bound is open. Tasks without a due date never match.
+     */
+    public List<Task> dueBetween(LocalDate from, LocalDate to, boolean includePending, boolean includeDone) {
+        List<Task> out = new ArrayList<>();
+        if (includePending) collectDue(pendingByDue, from, to, out);
+        if (includeDone) {
+            int split = out.size();
+            collectDue(doneByDue, from, to, out);
+            if (split > 0 && split < out.size()) out.sort(BY_DUE);
+        }
+        return out;
+    }
+
+    /**
+     * Like {@link #dueBetween}, read lazily from the due-date indexes without
+     * copying the matches. Each walks one skip list, so a task changed during
+     * the walk shows as it was or as it is.
+     */
+    public Stream<Task> streamDue(LocalDate from, LocalDate to, boolean includePending, boolean includeDone) {
+        Iterator<Task> p = includePending ? liveDue(pendingByDue, from, to) : Collections.emptyIterator();
+        Iterator<Task> d = includeDone ? liveDue(doneByDue, from, to) : Collections.emptyIterator();
+        Iterator<Task> it = includePending && includeDone ? new Merge(p, d, BY_DUE) : includePending ? p : d;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /** Tasks whose titles match {@code query}, best match first; see {@link TitleIndex} for the syntax. */
+    public List<Task> search(String query) {
+        return titleIndex().search(query, byId::get);
+    }
+
+    public int size() { return byId.size(); }
+    public int doneCount() { return doneCount.get(); }
+
+    /**
+     * Number of changes since the store was loaded. It is bumped after a change
+     * is in place, so a value read before a query is a safe cache validator for
+     * that query's result.
+     */
+    public long changeCount() { return changes.sum(); }
+
+    /** Pending tasks due on {@code day}. */
+    public int pendingDueOn(LocalDate day) {
+        AtomicInteger n = pendingPerDue.get(day);
+        return n != null ? n.get() : 0;
+    }
+
+    /** Pending tasks due before {@code day}; costs one step per distinct earlier due date, not per task. */
+    public int pendingDueBefore(LocalDate day) {
+        int sum = 0;
+        for (AtomicInteger n : pendingPerDue.headMap(day).values()) sum += n.get();
+        return sum;
+    }
+
+    public Task create(String title, LocalDate due) {
+        return create(title, false, OffsetDateTime.now(), due);
+    }
+
+    /** Creates a task with the given fields under the next free id. */
+    public Task create(String title, boolean isDone, OffsetDateTime createdAt, LocalDate due) {
+        long id = maxId.incrementAndGet();
+        Task t = new Task(id, title, isDone, createdAt, due);
+        markDirty(id, CREATED);
+        byId.put(id, t);
+        markDirty(id, CREATED);
+        changed(null, t);
+        afterWrite();
+        return t;
+    }
+
+    /**
+     * Same contract as {@link TaskRepository#update}. {@code fn} may be called
+     * more than once when other threads change the same task concurrently, so it
+     * must not have side effects.
+     */
+    public boolean update(long id, UnaryOperator<Task> fn) {
+        while (true) {
+            Task prev = byId.get(id);
+            if (prev == null) return false;
+            Task next = fn.apply(prev);
+            if (next == prev) return false;
+            markDirty(id, prev);
+            if (byId.replace(id, prev, next)) {
+                markDirty(id, prev);
+                changed(prev, next);
+                afterWrite();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Stores {@code t} under its own id, replacing the task there or bringing
+     * back one that was removed; used to undo changes.
+     */
+    public void put(Task t) {
+        long id = t.getId();
+        while (true) {
+            Task prev = byId.get(id);
+            if (prev == t) return;
+            Task base = prev != null ? prev : CREATED;
+            markDirty(id, base);
+            if (prev == null ? byId.putIfAbsent(id, t) == null : byId.replace(id, prev, t)) {
+                markDirty(id, base);
+                maxId.accumulateAndGet(id, Math::max);
+                changed(prev, t);
+                afterWrite();
+                return;
+            }
+        }
+    }
+
+    public boolean delete(long id) {
+        return remove(id) != null;
+    }
+
+    /** Removes the task with the given id and returns it, or null if there is none. */
+    public Task remove(long id) {
+        while (true) {
+            Task prev = byId.get(id);
+            if (prev == null) return null;
+            markDirty(id, prev);
+            if (byId.remove(id, prev)) {
+                markDirty(id, prev);
+                changed(prev, null);
+                afterWrite();
+                return prev;
+            }
+        }
+    }
+
+    public int deleteIf(Predicate<Task> filter) {
+        return deleteIf(filter, t -> { });
+    }
+
+    /** Removes every task matching {@code filter}, passing each one to {@code removed}. */
+    public int deleteIf(Predicate<Task> filter, Consumer<Task> removed) {
+        int count = 0;
+        for (Task t : byId.values()) {
+            if (!filter.test(t)) continue;
+            markDirty(t.getId(), t);
+            if (byId.remove(t.getId(), t)) {
+                markDirty(t.getId(), t);
+                changed(t, null);
+                removed.accept(t);
+                count++;
+            }
+        }
+        if (count > 0) afterWrite();
+        return count;
+    }
+
+    /**
+     * Runs {@code body}, holding back writes until it returns so that all changes
+     * it makes on this thread reach the repository in one save: write-through
+     * waits for the outermost call, and the background writer skips its runs
+     * while any batch is open. An explicit {@link #flush} still writes at once.
+     */
+    public <T> T batch(Supplier<T> body) {
+        int[] depth = batchDepth.get();
+        if (depth[0]++ == 0) openBatches.incrementAndGet();
+        try {
+            return body.get();
+        } finally {
+            if (--depth[0] == 0) {
+                openBatches.decrementAndGet();
+                afterWrite();
+            }
+        }
+    }
+
+    /**
+     * Takes in changes another process made to the file: writes our own pending
+     * changes first, then replaces every task that differs from the file and has
+     * no unwritten local change. Costs one version check when nobody else wrote;
+     * otherwise only the changed tasks are read if the engine can tell which
+     * they are (see {@link TaskRepository#changesSince}), and all of them if not.
+     *
+     * @return the changes applied here, in id order
+     */
+    public List<TaskRepository.Change> reload() {
+        synchronized (flushLock) {
+            flush();
+            if (repo.version() == syncedVersion) return List.of();
+            List<TaskRepository.Change> out = new ArrayList<>();
+            long loaded;
+            Optional<TaskRepository.Delta> delta = repo.changesSince(syncedVersion);
+            if (delta.isPresent()) {
+                delta.get().tasks().forEach((id, theirs) -> takeIn(id, theirs, out));
+                loaded = delta.get().version();
+            } else {
+                TaskRepository.Snapshot snapshot = repo.load();
+                long[] ids = new long[snapshot.tasks().size()];
+                for (int i = 0; i < ids.length; i++) {
+                    Task theirs = snapshot.tasks().get(i);
+                    takeIn(ids[i] = theirs.getId(), theirs, out);
+                }
+                for (Task ours : byId.values()) {
+                    if (Arrays.binarySearch(ids, ours.getId()) < 0) takeIn(ours.getId(), null, out);
+                }
+                loaded = snapshot.version();
+            }
+            // with local changes outstanding the old base stays, so the next write still rebases them
+            if (dirty.isEmpty()) version = loaded;
+            syncedVersion = loaded;
+            out.sort(Comparator.comparingLong(TaskRepository.Change::id));
+            return out;
+        }
+    }
+
+    /** Replaces our task {@code id} by the file's ({@code theirs}, null if removed) unless it has a local change. */
+    private void takeIn(long id, Task theirs, List<TaskRepository.Change> out) {
+        if (theirs != null) maxId.accumulateAndGet(id, Math::max);
+        if (dirty.containsKey(id)) return;
+        Task ours = byId.get(id);
+        if (ours == theirs || (ours != null && theirs != null && sameFields(ours, theirs))) return;
+        boolean replaced = theirs == null ? byId.remove(id, ours)
+                : ours == null ? byId.putIfAbsent(id, theirs) == null
+                : byId.replace(id, ours, theirs);
+        if (replaced) {
+            changed(ours, theirs);
+            out.add(new TaskRepository.Change(ours, theirs));
+        }
+    }
+
+    /**
+     * Runs {@code listener} on the flushing thread after every flush, whether it
+     * had anything to write or not, so that it can write state of its own that
+     * goes with the tasks.
+     */
+    public void afterFlush(Runnable listener) {
+        flushListeners.add(listener);
+    }
+
+    /** Writes all pending changes to the repository before returning. */
+    public void flush() {
+        try {
+            flushChanges();
+        } finally {
+            for (Runnable listener : flushListeners) listener.run();
+        }
+    }
+
+    private void flushChanges() {
+        synchronized (flushLock) {
+            if (dirty.isEmpty()) return;
+            long base = version;
+            Map<Long, Task> taken = new HashMap<>();
+            List<TaskRepository.Change> batch = new ArrayList<>();
+            for (Long id : dirty.keySet()) {
+                Task before = dirty.remove(id);
+                if (before == null) continue;
+                // read after taking the mark: a writer that changes the task from here on marks it again
+                Task after = byId.get(id);
+                if (before == after) continue;
+                taken.put(id, before);
+                if (before == CREATED) before = null;
+                if (before != null || after != null) batch.add(new TaskRepository.Change(before, after));
+            }
+            if (batch.isEmpty()) return;
+            TaskRepository.Commit commit;
+            try {
+                commit = repo.saveChanges(base, batch);
+            } catch (RuntimeException e) {
+                // nothing was written, so these bases hold even for tasks changed again since
+                dirty.putAll(taken);
+                throw e;
+            }
+            committed(base, commit);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private void afterWrite() {
+        if (writer == null && batchDepth.get()[0] == 0) flush();
+    }
+
+    private void flushQuietly() {
+        if (openBatches.get() > 0) return; // the next run writes the whole batch
+        try {
+            flush();
+            lastFlushError = null;
+        } catch (RuntimeException e) {
+            if (!String.valueOf(e.getMessage()).equals(lastFlushError)) {
+                System.err.println("Background flush failed, will retry: " + e.getMessage());
+            }
+            lastFlushError = String.valueOf(e.getMessage());
+        }
+    }
+
+    /**
+     * Takes in the repository's adjustments from a rebase, unless the task has
+     * been changed again in the meantime. The new file version is adopted only if
+     * nobody else wrote since {@code base}: after a rebase the other writers'
+     * changes to tasks outside the batch are not here yet, so later writes keep
+     * the old base and are rebased too, until {@link #reload} takes them in.
+     */
+    private void committed(long base, TaskRepository.Commit commit) {
+        if (commit.version() == base + 1) {
+            version = commit.version();
+            if (syncedVersion == base) syncedVersion = commit.version();
+        }
+        for (Map.Entry<Long, Task> e : commit.adjusted().entrySet()) {
+            long id = e.getKey();
+            Task stored = e.getValue();
+            if (stored != null && stored.getId() != id) {
+                moved(id, stored);
+            } else if (!dirty.containsKey(id)) {
+                Task current = byId.get(id);
+                if (current == null) continue;
+                if (stored == null ? byId.remove(id, current) : byId.replace(id, current, stored)) {
+                    changed(current, stored);
+                }
+            }
+        }
+    }
+
+    /** Follows a created task that the repository stored under a different id, including any change made since. */
+    private void moved(long id, Task stored) {
+        long to = stored.getId();
+        maxId.accumulateAndGet(to, Math::max);
+        Task base = dirty.remove(id);
+        if (base != null) dirty.put(to, base == CREATED ? CREATED : withId(base, to));
+        Task current = byId.get(id);
+        if (current == null || !byId.remove(id, current)) return;
+        changed(current, null);
+        Task moved = withId(current, to);
+        Task taken = byId.putIfAbsent(to, moved);
+        if (taken != null) {
+            // a task created here meanwhile already uses that id: it replaces ours
+            // in the file on the next write, and ours moves on again
+            dirty.put(to, stored);
+            moved = withId(current, maxId.incrementAndGet());
+            markDirty(moved.getId(), CREATED);
+            byId.put(moved.getId(), moved);
+        }
+        changed(null, moved);
+    }
+
+    /**
+     * Records that task {@code id} differs from the file unless it is already
+     * recorded. Writers call this both before their compare-and-set, so the
+     * recorded base is the oldest unwritten value, and after it, in case a flush
+     * took the first mark before the new value was in place.
+     */
+    private void markDirty(long id, Task base) {
+        dirty.putIfAbsent(id, base);
+    }
+
+    /**
+     * Brings the partitions, indexes and counters in line after {@code prev} was
+     * replaced by {@code next} in {@link #byId}. Concurrent changes to the same
+     * task can reach this in either order, so the partitions are set from the
+     * current value and re-checked until it holds still.
+     */
+    private void changed(Task prev, Task next) {
+        int delta = (next != null && next.isDone() ? 1 : 0) - (prev != null && prev.isDone() ? 1 : 0);
+        if (delta != 0) doneCount.addAndGet(delta);
+        if (prev != null && !prev.isDone() && prev.getDue() != null) countDue(prev.getDue(), -1);
+        if (next != null && !next.isDone() && next.getDue() != null) countDue(next.getDue(), 1);
+        long id = next != null ? next.getId() : prev.getId();
+        if (prev != null && prev.getDue() != null) {
+            DueKey old = DueKey.of(prev);
+            pendingByDue.remove(old, prev);
+            doneByDue.remove(old, prev);
+        }
+        TitleIndex index = titles;
+        boolean retitled = index != null && (prev == null || next == null || !prev.getTitle().equals(next.getTitle()));
+        if (retitled && prev != null) index.remove(prev);
+        Task current;
+        do {
+            current = byId.get(id);
+            if (current == null) {
+                pending.remove(id);
+                done.remove(id);
+            } else {
+                (current.isDone() ? done : pending).put(id, current);
+                (current.isDone() ? pending : done).remove(id);
+                if (current.getDue() != null) {
+                    DueKey key = DueKey.of(current);
+                    (current.isDone() ? doneByDue : pendingByDue).put(key, current);
+                    (current.isDone() ? pendingByDue : doneByDue).remove(key);
+                }
+            }
+        } while (byId.get(id) != current);
+        if (retitled && current != null) index.add(current);
+        changes.increment();
+    }
+
+    private void countDue(LocalDate due, int delta) {
+        // counters are never dropped, so an increment cannot land on a detached one
+        pendingPerDue.computeIfAbsent(due, d -> new AtomicInteger()).addAndGet(delta);
+    }
+
+    private TitleIndex titleIndex() {
+        if (!titlesBuilt) {
+            synchronized (titlesLock) {
+                if (!titlesBuilt) {
+                    TitleIndex index = new TitleIndex();
+                    titles = index; // from here on changes keep it current
+                    for (Task t : byId.values()) index.add(t);
+                    titlesBuilt = true;
+                }
+            }
+        }
+        return titles;
+    }
+
+    private void collectDue(ConcurrentNavigableMap<DueKey, Task> index, LocalDate from, LocalDate to, List<Task> out) {
+        for (Map.Entry<DueKey, Task> e : dueRange(index, from, to).entrySet()) {
+            Task t = e.getValue();
+            if (byId.get(t.getId()) == t) out.add(t);
+            else index.remove(e.getKey(), t);
+        }
+    }
+
+    /** The entries of {@code index} due in {@code [from, to)} that are still current. */
+    private Iterator<Task> liveDue(ConcurrentNavigableMap<DueKey, Task> index, LocalDate from, LocalDate to) {
+        return dueRange(index, from, to).values().stream().filter(t -> byId.get(t.getId()) == t).iterator();
+    }
+
+    private static ConcurrentNavigableMap<DueKey, Task> dueRange(ConcurrentNavigableMap<DueKey, Task> index,
+                                                                LocalDate from, LocalDate to) {
+        DueKey lo = from != null ? new DueKey(from, Long.MIN_VALUE) : null;
+        DueKey hi = to != null ? new DueKey(to, Long.MIN_VALUE) : null;
+        if (lo != null && hi != null) return lo.compareTo(hi) < 0 ? index.subMap(lo, hi) : index.subMap(lo, lo);
+        return lo != null ? index.tailMap(lo) : hi != null ? index.headMap(hi) : index;
+    }
+
+    private static boolean sameFields(Task a, Task b) {
+        return a.getId() == b.getId() && a.isDone() == b.isDone() && a.getTitle().equals(b.getTitle())
+                && a.getCreatedAt().equals(b.getCreatedAt()) && Objects.equals(a.getDue(), b.getDue());
+    }
+
+    private static Task withId(Task t, long id) {
+        return new Task(id, t.getTitle(), t.isDone(), t.getCreatedAt(), t.getDue());
+    }
+
+    private static final Comparator<Task> BY_ID = Comparator.comparingLong(Task::getId);
+    private static final Comparator<Task> BY_DUE = Comparator.comparing(Task::getDue).thenComparingLong(Task::getId);
+
+    private record DueKey(LocalDate due, long id) implements Comparable<DueKey> {
+        static DueKey of(Task t) { return new DueKey(t.getDue(), t.getId()); }
+
+        @Override
+        public int compareTo(DueKey o) {
+            int c = due.compareTo(o.due);
+            return c != 0 ? c : Long.compare(id, o.id);
+        }
+    }
+
+    /** Merges two iterators over the partitions, each sorted by {@code order}, into one. */
+    private static final class Merge implements Iterator<Task> {
+        private final Iterator<Task> p, d;
+        private final Comparator<Task> order;
+        private Task a, b;
+        private long last = Long.MIN_VALUE;
+
+        Merge(Iterator<Task> p, Iterator<Task> d, Comparator<Task> order) {
+            this.p = p;
+            this.d = d;
+            this.order = order;
+            a = p.hasNext() ? p.next() : null;
+            b = d.hasNext() ? d.next() : null;
+            skipSeen();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return a != null || b != null;
+        }
+
+        @Override
+        public Task next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Task next;
+            if (b == null || (a != null && order.compare(a, b) < 0)) {
+                next = a;
+                a = p.hasNext() ? p.next() : null;
+            } else {
+                next = b;
+                b = d.hasNext() ? d.next() : null;
+            }
+            last = next.getId();
+            skipSeen();
+            return next;
+        }
+
+        /** A task that changed partition during the walk can be seen in both. */
+        private void skipSeen() {
+            while (a != null && a.getId() == last) a = p.hasNext() ? p.next() : null;
+            while (b != null && b.getId() == last) b = d.hasNext() ? d.next() : null;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongFunction;
+
+/**
+ * Inverted index from lower-cased title words to task ids, kept up to date by
+ * {@link TaskStore} as tasks come and go.
+ * <p>
+ * A query is a list of terms, all of which must match (AND); {@code OR} or
+ * {@code |} between terms starts an alternative. Every term matches words it is
+ * a prefix of. Only the most selective term of each alternative is looked up in
+ * the index; the other terms are checked against the candidates' current
+ * titles, which also filters out postings that a concurrent change has left
+ * behind.
+ */
+final class TitleIndex {
+    private static final int EXACT = 2;
+    private static final int PREFIX = 1;
+
+    private final ConcurrentNavigableMap<String, Set<Long>> postings = new ConcurrentSkipListMap<>();
+
+    void add(Task t) {
+        for (String word : words(t.getTitle())) {
+            postings.computeIfAbsent(word, k -> ConcurrentHashMap.newKeySet()).add(t.getId());
+        }
+    }
+
+    void remove(Task t) {
+        for (String word : words(t.getTitle())) {
+            Set<Long> ids = postings.get(word);
+            // empty sets stay: dropping one could race with a concurrent add
+            if (ids != null) ids.remove(t.getId());
+        }
+    }
+
+    /**
+     * Current tasks matching {@code query}, best first: a term matching a whole
+     * word counts more than one matching only its start, and ties go by id.
+     */
+    List<Task> search(String query, LongFunction<Task> current) {
+        List<List<String>> alternatives = parse(query);
+        Set<Long> candidates = new HashSet<>();
+        for (List<String> terms : alternatives) {
+            String driver = null;
+            long best = Long.MAX_VALUE;
+            for (String term : terms) {
+                long n = 0;
+                for (Set<Long> ids : prefixed(term).values()) n += ids.size();
+                if (n < best) {
+                    best = n;
+                    driver = term;
+                }
+            }
+            if (best == 0) continue;
+            for (Set<Long> ids : prefixed(driver).values()) candidates.addAll(ids);
+        }
+        Map<Task, Integer> scored = new HashMap<>();
+        for (long id : candidates) {
+            Task t = current.apply(id);
+            if (t == null) continue;
+            int score = score(words(t.getTitle()), alternatives);
+            if (score > 0) scored.put(t, score);
+        }
+        List<Task> out = new ArrayList<>(scored.keySet());
+        out.sort(Comparator.<Task>comparingInt(scored::get).reversed().thenComparingLong(Task::getId));
+        return out;
+    }
+
+    private ConcurrentNavigableMap<String, Set<Long>> prefixed(String term) {
+        return postings.subMap(term, true, term + Character.MAX_VALUE, false);
+    }
+
+    /** Best score over the alternatives whose terms all match one of {@code words}; 0 if none does. */
+    private static int score(List<String> words, List<List<String>> alternatives) {
+        int best = 0;
+        for (List<String> terms : alternatives) {
+            int sum = 0;
+            for (String term : terms) {
+                int s = 0;
+                for (String w : words) {
+                    if (w.equals(term)) { s = EXACT; break; }
+                    if (w.startsWith(term)) s = PREFIX;
+                }
+                if (s == 0) { sum = 0; break; }
+                sum += s;
+            }
+            best = Math.max(best, sum);
+        }
+        return best;
+    }
+
+    private static List<List<String>> parse(String query) {
+        List<List<String>> alternatives = new ArrayList<>();
+        List<String> terms = new ArrayList<>();
+        for (String part : query.trim().split("\\s+")) {
+            if (part.equals("OR") || part.equals("|")) {
+                if (!terms.isEmpty()) alternatives.add(terms);
+                terms = new ArrayList<>();
+            } else {
+                terms.addAll(words(part));
+            }
+        }
+        if (!terms.isEmpty()) alternatives.add(terms);
+        return alternatives;
+    }
+
+    /** Lower-cased runs of letters and digits. */
+    static List<String> words(String text) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
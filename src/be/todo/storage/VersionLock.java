@@ -0,0 +1,117 @@
+package be.todo.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+
+/**
+ * Cross-process reader/writer lock plus a version counter, kept in a small
+ * {@code <file>.lock} sidecar. The data file itself cannot carry the lock
+ * because saves replace it by renaming a new file over it.
+ * <p>
+ * File locks are held per JVM, so threads of this process are coordinated by a
+ * local read/write lock and share a single shared file lock between readers.
+ */
+final class VersionLock implements Closeable {
+    private final Path lockFile;
+    private final FileChannel ch;
+    private final ReentrantReadWriteLock local = new ReentrantReadWriteLock();
+    private final ByteBuffer versionBuf = ByteBuffer.allocate(Long.BYTES);
+    private FileLock shared;
+    private int readers;
+
+    VersionLock(Path dataFile) {
+        this.lockFile = dataFile.resolveSibling(dataFile.getFileName() + ".lock");
+        try {
+            Path parent = lockFile.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.ch = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open lock file: " + lockFile, e);
+        }
+    }
+
+    /** Runs {@code body} with the current version while other processes cannot write. */
+    <T> T shared(LongFunction<T> body) {
+        local.readLock().lock();
+        try {
+            acquireShared();
+            try {
+                return body.apply(readVersion());
+            } finally {
+                releaseShared();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to lock " + lockFile, e);
+        } finally {
+            local.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code body} with the current version while no other process can read
+     * or write, then advances the version if {@code body} returned normally.
+     */
+    <T> T exclusive(LongFunction<T> body) {
+        local.writeLock().lock();
+        try (FileLock ignored = ch.lock()) {
+            long version = readVersion();
+            T result = body.apply(version);
+            writeVersion(version + 1);
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to lock " + lockFile, e);
+        } finally {
+            local.writeLock().unlock();
+        }
+    }
+
+    private synchronized void acquireShared() throws IOException {
+        if (readers++ == 0) {
+            try {
+                shared = ch.lock(0, Long.MAX_VALUE, true);
+            } catch (IOException | RuntimeException e) {
+                readers--;
+                throw e;
+            }
+        }
+    }
+
+    private synchronized void releaseShared() throws IOException {
+        if (--readers == 0) {
+            shared.release();
+            shared = null;
+        }
+    }
+
+    private synchronized long readVersion() throws IOException {
+        versionBuf.clear();
+        while (versionBuf.hasRemaining()) {
+            if (ch.read(versionBuf, versionBuf.position()) < 0) return 0;
+        }
+        return versionBuf.flip().getLong();
+    }
+
+    private synchronized void writeVersion(long version) throws IOException {
+        versionBuf.clear();
+        versionBuf.putLong(version).flip();
+        while (versionBuf.hasRemaining()) ch.write(versionBuf, versionBuf.position());
+    }
+
+    @Override
+    public void close() {
+        try {
+            ch.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close lock file: " + lockFile, e);
+        }
+    }
+}
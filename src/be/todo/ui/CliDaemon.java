@@ -0,0 +1,138 @@
+package be.todo.ui;
+
+import be.todo.service.TodoService;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps a {@link TodoService} resident and runs CLI commands sent to it over a
+ * Unix domain socket next to the data file ({@code <file>.sock}), so a one-shot
+ * {@code --cli} call neither starts the service nor reads the file.
+ * <p>
+ * A client connects, sends its working directory and one command line, each
+ * ended by a newline, and reads the output until the daemon closes the
+ * connection. Every command first takes in changes other processes made, so
+ * its answer is as fresh as an in-process run.
+ */
+final class CliDaemon implements AutoCloseable {
+    private final TodoService service;
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final Thread acceptor;
+
+    CliDaemon(TodoService service, Path socket) {
+        this.service = service;
+        this.socket = socket;
+        try {
+            if (Files.exists(socket)) {
+                if (isRunning(socket)) throw new IllegalStateException("A daemon is already listening on " + socket);
+                Files.delete(socket); // left behind by a daemon that did not shut down cleanly
+            }
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot listen on " + socket, e);
+        }
+        acceptor = new Thread(this::accept, "todo-daemon");
+        acceptor.start();
+    }
+
+    static Path socketFor(Path dataFile) {
+        Path abs = dataFile.toAbsolutePath();
+        return abs.resolveSibling(abs.getFileName() + ".sock");
+    }
+
+    /**
+     * Runs {@code line} in the daemon for {@code dataFile}, copying its output to
+     * {@code out}. Returns false, having done nothing, when no daemon is running.
+     */
+    static boolean forward(Path dataFile, String line, OutputStream out) {
+        Path socket = socketFor(dataFile);
+        if (Files.notExists(socket)) return false;
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            return false;
+        }
+        try (ch) {
+            String request = Path.of("").toAbsolutePath() + "\n" + line + "\n";
+            Channels.newOutputStream(ch).write(request.getBytes(StandardCharsets.UTF_8));
+            ch.shutdownOutput();
+            Channels.newInputStream(ch).transferTo(out);
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Lost connection to the daemon on " + socket, e);
+        }
+    }
+
+    private static boolean isRunning(Path socket) {
+        try (SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Daemon accept failed: " + e.getMessage());
+                continue;
+            }
+            Thread.ofVirtual().name("todo-daemon-client").start(() -> serve(client));
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (client) {
+            InputStream in = Channels.newInputStream(client);
+            var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String workDir = reader.readLine();
+            String line = reader.readLine();
+            if (workDir == null || line == null) return;
+            var out = new PrintStream(new BufferedOutputStream(Channels.newOutputStream(client), 1 << 16),
+                    false, StandardCharsets.UTF_8);
+            try {
+                service.reload();
+            } catch (RuntimeException e) {
+                out.println("Warning: could not check the data file for outside changes: " + e.getMessage());
+            }
+            new CommandProcessor(service, out, out, Path.of(workDir)).process(line);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Daemon client failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to stop the daemon on " + socket, e);
+        }
+    }
+}
@@ -1,16 +1,38 @@
 package be.todo.ui;
 
+import be.todo.metrics.Metrics;
 import be.todo.model.Task;
 import be.todo.service.TodoService;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 final class CommandProcessor {
     private final TodoService service;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Path workDir;
 
     CommandProcessor(TodoService service) {
+        this(service, System.out, System.err, Path.of(""));
+    }
+
+    /**
+     * Writes command output to {@code out} and error messages to {@code err}, and
+     * resolves relative file names against {@code workDir}.
+     */
+    CommandProcessor(TodoService service, PrintStream out, PrintStream err, Path workDir) {
         this.service = service;
+        this.out = out;
+        this.err = err;
+        this.workDir = workDir;
     }
 
     boolean process(String line) {
@@ -26,93 +48,201 @@ final class CommandProcessor {
                 case "help" -> printHelp();
                 case "add" -> handleAdd(args);
                 case "list" -> handleList(args);
+                case "search" -> handleSearch(args);
                 case "done" -> handleDone(args);
                 case "remove" -> handleRemove(args);
                 case "due" -> handleDue(args);
                 case "clear-done" -> handleClearDone();
+                case "undo" -> handleUndo(true);
+                case "redo" -> handleUndo(false);
                 case "stats" -> handleStats();
-                case "exit", "quit" -> { System.out.println("Bye!"); return false; }
-                default -> { System.out.println("Unknown command: " + cmd); printHelp(); }
+                case "export" -> handleExport(args);
+                case "import" -> handleImport(args);
+                case "metrics" -> out.print(Metrics.global().report());
+                case "exit", "quit" -> { out.println("Bye!"); return false; }
+                default -> { out.println("Unknown command: " + cmd); printHelp(); }
             }
         } catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
+            err.println("Error: " + e.getMessage());
         }
         return true;
     }
 
     private void handleAdd(String[] args) {
-        if (args.length < 2) { System.out.println("Usage: add \"title\" [--due yyyy-mm-dd]"); return; }
+        if (args.length < 2) { out.println("Usage: add \"title\" [--due yyyy-mm-dd]"); return; }
         String title = args[1];
         LocalDate due = null;
         if (args.length >= 4 && "--due".equals(args[2])) due = LocalDate.parse(args[3]);
         Task t = service.add(title, due);
-        System.out.println("Added: " + t);
+        out.println("Added: " + t);
     }
 
     private void handleList(String[] args) {
-        boolean all = false, pending = false, done = false;
+        boolean all = false, pending = false, done = false, overdue = false;
+        LocalDate dueBefore = null, dueAfter = null;
+        Long after = null;
+        int limit = Integer.MAX_VALUE;
         for (int j = 1; j < args.length; j++) {
             switch (args[j]) {
                 case "--all" -> all = true;
                 case "--pending" -> pending = true;
                 case "--done" -> done = true;
+                case "--overdue" -> overdue = true;
+                case "--due-before" -> { if (j + 1 < args.length) dueBefore = LocalDate.parse(args[++j]); }
+                case "--due-after" -> { if (j + 1 < args.length) dueAfter = LocalDate.parse(args[++j]); }
+                case "--after" -> { if (j + 1 < args.length) after = Long.parseLong(args[++j]); }
+                case "--limit" -> { if (j + 1 < args.length) limit = Integer.parseInt(args[++j]); }
+            }
+        }
+        boolean byDue = overdue || dueBefore != null || dueAfter != null;
+        if (byDue && after != null) {
+            out.println("--after pages in id order; it cannot be combined with --overdue, --due-before or --due-after");
+            return;
+        }
+        TodoService.Status status = all || (!pending && !done) ? TodoService.Status.ALL
+                : (done ? TodoService.Status.DONE : TodoService.Status.PENDING);
+        Stream<Task> tasks;
+        if (LocalDate.MAX.equals(dueAfter) || LocalDate.MIN.equals(dueBefore)) {
+            tasks = Stream.empty(); // nothing is due after the last day or before the first
+        } else if (overdue) {
+            LocalDate today = LocalDate.now();
+            if (dueBefore == null || today.isBefore(dueBefore)) dueBefore = today;
+            tasks = service.streamDue(dueAfter != null ? dueAfter.plusDays(1) : null, dueBefore.minusDays(1), TodoService.Status.PENDING);
+        } else if (dueBefore != null || dueAfter != null) {
+            tasks = service.streamDue(dueAfter != null ? dueAfter.plusDays(1) : null,
+                    dueBefore != null ? dueBefore.minusDays(1) : null, status);
+        } else {
+            tasks = service.stream(status, after != null ? after : 0);
+        }
+        var page = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, out.charset()), 1 << 16));
+        Iterator<Task> it = tasks.iterator();
+        long shown = 0, last = 0;
+        while (shown < limit && it.hasNext()) {
+            Task t = it.next();
+            page.println(t.toString());
+            shown++;
+            last = t.getId();
+        }
+        if (shown == 0) page.println("(no tasks)");
+        // asking for one row past the page tells whether there is a next one
+        else if (it.hasNext()) page.println(byDue ? "(more: raise --limit)" : "(more: --after " + last + ")");
+        page.flush();
+    }
+
+    private void handleSearch(String[] args) {
+        int limit = 20, offset = 0;
+        StringBuilder query = new StringBuilder();
+        for (int j = 1; j < args.length; j++) {
+            switch (args[j]) {
+                case "--limit" -> { if (j + 1 < args.length) limit = Integer.parseInt(args[++j]); }
+                case "--offset" -> { if (j + 1 < args.length) offset = Integer.parseInt(args[++j]); }
+                default -> query.append(args[j]).append(' ');
             }
         }
-        List<Task> tasks = all || (!pending && !done)
-                ? service.listAll()
-                : (done ? service.listDone() : service.listPending());
-        if (tasks.isEmpty()) { System.out.println("(no tasks)"); return; }
-        tasks.forEach(t -> System.out.println(t.toString()));
+        if (query.isEmpty()) { out.println("Usage: search <terms> [--limit n] [--offset n]"); return; }
+        var result = service.search(query.toString(), offset, limit);
+        if (result.tasks().isEmpty()) { out.println("(no matches)"); return; }
+        result.tasks().forEach(t -> out.println(t.toString()));
+        out.println("Showing " + (offset + 1) + "-" + (offset + result.tasks().size()) + " of " + result.total());
     }
 
     private void handleDone(String[] args) {
-        if (args.length < 2) { System.out.println("Usage: done <id>"); return; }
+        if (args.length < 2) { out.println("Usage: done <id>"); return; }
         long id = Long.parseLong(args[1]);
         boolean ok = service.markDone(id);
-        System.out.println(ok ? "Marked done: #" + id : "Task not found or already done: #" + id);
+        out.println(ok ? "Marked done: #" + id : "Task not found or already done: #" + id);
     }
 
     private void handleRemove(String[] args) {
-        if (args.length < 2) { System.out.println("Usage: remove <id>"); return; }
+        if (args.length < 2) { out.println("Usage: remove <id>"); return; }
         long id = Long.parseLong(args[1]);
         boolean ok = service.remove(id);
-        System.out.println(ok ? "Removed: #" + id : "Task not found: #" + id);
+        out.println(ok ? "Removed: #" + id : "Task not found: #" + id);
     }
 
     private void handleDue(String[] args) {
-        if (args.length < 3) { System.out.println("Usage: due <id> yyyy-mm-dd"); return; }
+        if (args.length < 3) { out.println("Usage: due <id> yyyy-mm-dd"); return; }
         long id = Long.parseLong(args[1]);
         LocalDate due = LocalDate.parse(args[2]);
         boolean ok = service.updateDue(id, due);
-        System.out.println(ok ? "Updated due date for #" + id + " to " + due : "Task not found: #" + id);
+        out.println(ok ? "Updated due date for #" + id + " to " + due : "Task not found or already due then: #" + id);
     }
 
     private void handleClearDone() {
         int removed = service.clearDone();
-        System.out.println("Removed " + removed + " done tasks");
+        out.println("Removed " + removed + " done tasks");
+    }
+
+    private void handleUndo(boolean undo) {
+        var result = undo ? service.undo() : service.redo();
+        if (result.isEmpty()) { out.println(undo ? "Nothing to undo" : "Nothing to redo"); return; }
+        var r = result.get();
+        if (r.tasks() == 0) {
+            out.println((undo ? "Could not undo " : "Could not redo ") + r.label() + ": its tasks were changed since");
+            return;
+        }
+        out.println((undo ? "Undone: " : "Redone: ") + r.label() + (r.tasks() != 1 ? " (" + r.tasks() + " tasks)" : ""));
+        if (r.skipped() > 0) out.println("Left " + r.skipped() + " tasks that were changed since as they are");
     }
 
     private void handleStats() {
         var s = service.stats();
-        System.out.printf("Total: %d, Done: %d, Pending: %d%n", s.total(), s.done(), s.pending());
+        out.printf("Total: %d, Done: %d, Pending: %d, Overdue: %d, Due today: %d%n",
+                s.total(), s.done(), s.pending(), s.overdue(), s.dueToday());
     }
 
-    static void printHelp() {
-        System.out.println("""
+    private void handleExport(String[] args) {
+        if (args.length < 2) { out.println("Usage: export <file>"); return; }
+        int n = service.exportJson(workDir.resolve(args[1]));
+        out.println("Exported " + n + " tasks to " + args[1]);
+    }
+
+    private void handleImport(String[] args) {
+        if (args.length < 2) { out.println("Usage: import <file.jsonl|file.csv>"); return; }
+        int n = service.importFile(workDir.resolve(args[1]), count -> out.print("\rImported " + count + " tasks..."));
+        if (n > 0) out.println();
+        out.println("Imported " + n + " tasks from " + args[1]);
+    }
+
+    void printHelp() {
+        out.println("""
                 Todo CLI (interactive)
                 Commands:
                   help
                   add "<title>" [--due yyyy-mm-dd]
-                  list [--all] [--pending] [--done]
+                  list [--all] [--pending] [--done] [--overdue] [--due-before yyyy-mm-dd] [--due-after yyyy-mm-dd]
+                       [--limit n] [--after <id>]
+                  search <terms> [--limit n] [--offset n]   (terms match word starts; OR between alternatives)
                   done <id>
                   remove <id>
                   due <id> yyyy-mm-dd
                   clear-done
+                  undo | redo     (the last change, also one made by another command on this file)
                   stats
+                  export <file>
+                  import <file>   (JSON-lines, or CSV: title[,due[,done]])
+                  metrics         (latency of every operation and storage I/O so far)
                   exit | quit
                 """);
     }
 
+    /** The inverse of {@link #tokenize}: joins shell arguments into one line, quoting where needed. */
+    static String join(String[] args) {
+        StringBuilder sb = new StringBuilder();
+        for (String a : args) {
+            if (!sb.isEmpty()) sb.append(' ');
+            boolean quote = a.isEmpty() || a.chars().anyMatch(Character::isWhitespace);
+            if (quote) sb.append('"');
+            for (int i = 0; i < a.length(); i++) {
+                char c = a.charAt(i);
+                if (c == '"' || c == '\\') sb.append('\\');
+                sb.append(c);
+            }
+            if (quote) sb.append('"');
+        }
+        return sb.toString();
+    }
+
     static String[] tokenize(String line) {
         var out = new java.util.ArrayList<String>();
         StringBuilder cur = new StringBuilder();
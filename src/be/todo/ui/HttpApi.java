@@ -0,0 +1,345 @@
+package be.todo.ui;
+
+import be.todo.model.Task;
+import be.todo.service.TodoService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * REST front end for a shared {@link TodoService}, served by the JDK's
+ * {@link HttpServer} with one virtual thread per request. Tasks are written
+ * with {@link Task#toJson()}; parameters come from the query string or a
+ * form-encoded body.
+ * <pre>
+ *   GET    /tasks[?status=all|pending|done&amp;after=id&amp;limit=n&amp;due-after=d&amp;due-before=d&amp;overdue]
+ *   POST   /tasks            title=...&amp;due=yyyy-mm-dd
+ *   GET    /tasks/{id}
+ *   DELETE /tasks/{id}
+ *   POST   /tasks/{id}/done
+ *   PUT    /tasks/{id}/due   due=yyyy-mm-dd (empty clears it)
+ *   POST   /tasks/clear-done
+ *   POST   /tasks/batch      one operation per line, each form-encoded:
+ *                            op=add&amp;title=...&amp;due=d, op=done&amp;id=n, op=remove&amp;id=n, op=due&amp;id=n&amp;due=d
+ *   GET    /search?q=...[&amp;offset=n&amp;limit=n]
+ *   GET    /stats
+ * </pre>
+ * Listings carry an ETag that changes with every change to the tasks, with a
+ * restart of the server and, for {@code overdue}, with the date, so a client
+ * repeating {@code If-None-Match} gets a 304 without the body being built.
+ */
+final class HttpApi implements AutoCloseable {
+    private static final int BACKLOG = 1024;
+
+    private final TodoService service;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /** Distinguishes this server's tags from those of an earlier run, whose change count started at 0 too. */
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    /**
+     * Starts serving on {@code address}. The API has no authentication, so only
+     * the loopback address keeps it to this machine.
+     */
+    HttpApi(TodoService service, InetAddress address, int port) {
+        this.service = service;
+        try {
+            server = HttpServer.create(new InetSocketAddress(address, port), BACKLOG);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot listen on " + address.getHostAddress() + ":" + port, e);
+        }
+        server.setExecutor(executor);
+        server.createContext("/tasks", this::tasks);
+        server.createContext("/search", this::search);
+        server.createContext("/stats", this::stats);
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** The base URL to reach the API at, for messages. */
+    String url() {
+        InetSocketAddress a = server.getAddress();
+        String host = a.getAddress().isLoopbackAddress() ? "localhost"
+                : a.getAddress().isAnyLocalAddress() ? a.getAddress().getHostAddress() + " (all interfaces)"
+                : a.getAddress().getHostAddress();
+        return "http://" + host + ":" + a.getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+    // ---------------------------------------------------------------- routes
+
+    private void tasks(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String[] path = ex.getRequestURI().getPath().substring("/tasks".length()).split("/");
+            // path[0] is the empty string before the first slash
+            String method = ex.getRequestMethod();
+            if (path.length > 0 && !path[0].isEmpty()) {
+                send(ex, 404, error("No such resource: " + ex.getRequestURI().getPath()));
+            } else if (path.length <= 1) {
+                switch (method) {
+                    case "GET" -> list(ex);
+                    case "POST" -> {
+                        Map<String, String> p = params(ex);
+                        String title = p.get("title");
+                        if (title == null || title.isBlank()) throw new IllegalArgumentException("title is required");
+                        send(ex, 201, service.add(title, date(p.get("due"))).toJson());
+                    }
+                    default -> send(ex, 405, error("Use GET or POST"));
+                }
+            } else if (path.length == 2 && path[1].equals("clear-done")) {
+                if (!method.equals("POST")) { send(ex, 405, error("Use POST")); return; }
+                send(ex, 200, "{\"removed\":" + service.clearDone() + "}");
+            } else if (path.length == 2 && path[1].equals("batch")) {
+                if (!method.equals("POST")) { send(ex, 405, error("Use POST")); return; }
+                TodoService.BatchResult result = service.batch(ops(ex));
+                StringBuilder sb = new StringBuilder("{\"added\":[");
+                for (int i = 0; i < result.added().size(); i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append(result.added().get(i).toJson());
+                }
+                send(ex, 200, sb.append("],\"changed\":").append(result.changed())
+                        .append(",\"skipped\":").append(result.skipped()).append('}').toString());
+            } else {
+                long id = Long.parseLong(path[1]);
+                String action = path.length > 2 ? path[2] : "";
+                switch (method + " " + action) {
+                    case "GET " -> sendTask(ex, service.getById(id));
+                    case "DELETE " -> {
+                        if (service.remove(id)) send(ex, 204, null);
+                        else send(ex, 404, error("No task #" + id));
+                    }
+                    case "POST done" -> {
+                        service.markDone(id);
+                        sendTask(ex, service.getById(id));
+                    }
+                    case "PUT due" -> {
+                        service.updateDue(id, date(params(ex).get("due")));
+                        sendTask(ex, service.getById(id));
+                    }
+                    default -> send(ex, 404, error("No such resource: " + method + " " + ex.getRequestURI().getPath()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Streams a listing. Everything that can be rejected is checked before the
+     * headers go out; an error while the body is being written can then only
+     * cut the response short (see {@link #handle}).
+     */
+    private void list(HttpExchange ex) throws IOException {
+        Map<String, String> p = params(ex);
+        LocalDate today = LocalDate.now();
+        // read before listing: a change made meanwhile then always yields a new tag
+        String etag = "W/\"" + epoch + "-" + service.changeCount()
+                + (p.containsKey("overdue") ? "-" + today : "") + "\"";
+        if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+            ex.getResponseHeaders().set("ETag", etag);
+            send(ex, 304, null);
+            return;
+        }
+        TodoService.Status status = switch (p.getOrDefault("status", "all")) {
+            case "pending" -> TodoService.Status.PENDING;
+            case "done" -> TodoService.Status.DONE;
+            case "all" -> TodoService.Status.ALL;
+            default -> throw new IllegalArgumentException("status must be all, pending or done");
+        };
+        long limit = p.containsKey("limit") ? Long.parseLong(p.get("limit")) : Long.MAX_VALUE;
+        if (limit < 0) throw new IllegalArgumentException("limit must be 0 or more");
+        long after = p.containsKey("after") ? Long.parseLong(p.get("after")) : 0;
+        LocalDate dueAfter = date(p.get("due-after")), dueBefore = date(p.get("due-before"));
+        if (p.containsKey("overdue")) {
+            status = TodoService.Status.PENDING;
+            if (dueBefore == null || today.isBefore(dueBefore)) dueBefore = today;
+        }
+        if ((dueAfter != null || dueBefore != null) && p.containsKey("after")) {
+            throw new IllegalArgumentException("after pages in id order; it cannot be combined with due-after, due-before or overdue");
+        }
+        Stream<Task> tasks = LocalDate.MAX.equals(dueAfter) || LocalDate.MIN.equals(dueBefore)
+                ? Stream.empty() // nothing is due after the last day or before the first
+                : dueAfter != null || dueBefore != null
+                ? service.streamDue(dueAfter != null ? dueAfter.plusDays(1) : null,
+                        dueBefore != null ? dueBefore.minusDays(1) : null, status)
+                : service.stream(status, after);
+        Iterator<Task> it = tasks.limit(limit).iterator();
+        it.hasNext(); // reads the first task, so that a failing store still gets a 500
+        ex.getResponseHeaders().set("ETag", etag);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(200, 0);
+        try (OutputStream out = new BufferedOutputStream(ex.getResponseBody(), 1 << 16)) {
+            writeArray(out, it);
+        }
+    }
+
+    private void search(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            Map<String, String> p = params(ex);
+            String q = p.get("q");
+            if (q == null || q.isBlank()) throw new IllegalArgumentException("q is required");
+            int offset = p.containsKey("offset") ? Integer.parseInt(p.get("offset")) : 0;
+            int limit = p.containsKey("limit") ? Integer.parseInt(p.get("limit")) : 20;
+            TodoService.SearchResult result = service.search(q, offset, limit);
+            StringBuilder sb = new StringBuilder("{\"total\":").append(result.total()).append(",\"tasks\":[");
+            for (int i = 0; i < result.tasks().size(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(result.tasks().get(i).toJson());
+            }
+            send(ex, 200, sb.append("]}").toString());
+        });
+    }
+
+    private void stats(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            TodoService.Stats s = service.stats();
+            send(ex, 200, "{\"total\":" + s.total() + ",\"done\":" + s.done() + ",\"pending\":" + s.pending()
+                    + ",\"overdue\":" + s.overdue() + ",\"dueToday\":" + s.dueToday() + "}");
+        });
+    }
+
+    // ---------------------------------------------------------------- plumbing
+
+    private interface Handler {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs a route, turning bad input into 400 and anything else into 500. A
+     * failure after the headers were sent is rethrown without closing the
+     * exchange: the server then drops the connection, so the client sees a
+     * response cut short rather than a complete one.
+     */
+    private static void handle(HttpExchange ex, Handler route) throws IOException {
+        try {
+            route.run();
+        } catch (NumberFormatException | DateTimeException e) {
+            fail(ex, e, 400, "Bad value: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            fail(ex, e, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            fail(ex, e, 500, String.valueOf(e.getMessage()));
+        }
+        ex.close();
+    }
+
+    private static void fail(HttpExchange ex, RuntimeException e, int status, String message) throws IOException {
+        if (ex.getResponseCode() != -1) throw e;
+        send(ex, status, error(message));
+    }
+
+    private static void writeArray(OutputStream out, Iterator<Task> tasks) throws IOException {
+        out.write('[');
+        boolean first = true;
+        while (tasks.hasNext()) {
+            if (!first) out.write(',');
+            out.write(tasks.next().toJson().getBytes(StandardCharsets.UTF_8));
+            first = false;
+        }
+        out.write(']');
+    }
+
+    private static void sendTask(HttpExchange ex, Optional<Task> task) throws IOException {
+        if (task.isPresent()) send(ex, 200, task.get().toJson());
+        else send(ex, 404, error("No such task"));
+    }
+
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        if (json == null) {
+            ex.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length);
+        ex.getResponseBody().write(body);
+    }
+
+    private static String error(String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":\"");
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append("\"}").toString();
+    }
+
+    /** Query parameters, plus those of a form-encoded body; a parameter without a value maps to "". */
+    private static Map<String, String> params(HttpExchange ex) throws IOException {
+        Map<String, String> out = new HashMap<>();
+        parseForm(ex.getRequestURI().getRawQuery(), out);
+        parseForm(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), out);
+        return out;
+    }
+
+    /** The operations of a batch body; all are checked before any is applied. */
+    private static List<TodoService.Op> ops(HttpExchange ex) throws IOException {
+        List<TodoService.Op> ops = new ArrayList<>();
+        String[] lines = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isBlank()) continue;
+            Map<String, String> p = new HashMap<>();
+            parseForm(lines[i], p);
+            String op = p.getOrDefault("op", "");
+            ops.add(switch (op) {
+                case "add" -> {
+                    String title = p.get("title");
+                    if (title == null || title.isBlank()) throw new IllegalArgumentException("line " + (i + 1) + ": title is required");
+                    yield new TodoService.Op.Add(title, date(p.get("due")));
+                }
+                case "done" -> new TodoService.Op.Done(id(p, i));
+                case "remove" -> new TodoService.Op.Remove(id(p, i));
+                case "due" -> new TodoService.Op.Due(id(p, i), date(p.get("due")));
+                default -> throw new IllegalArgumentException("line " + (i + 1) + ": op must be add, done, remove or due");
+            });
+        }
+        return ops;
+    }
+
+    private static long id(Map<String, String> p, int line) {
+        if (!p.containsKey("id")) throw new IllegalArgumentException("line " + (line + 1) + ": id is required");
+        return Long.parseLong(p.get("id"));
+    }
+
+    private static void parseForm(String form, Map<String, String> out) {
+        if (form == null || form.isBlank()) return;
+        for (String pair : form.trim().split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            out.put(key, value);
+        }
+    }
+
+    private static LocalDate date(String value) {
+        return value == null || value.isBlank() ? null : LocalDate.parse(value.trim());
+    }
+}
@@ -1,16 +1,26 @@
 package be.todo.ui;
 
 import be.todo.model.Task;
+import be.todo.service.ReminderScheduler;
 import be.todo.service.TodoService;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.time.LocalDate;
-import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 public final class SwingApp {
     private final TodoService service;
+    private TaskListModel listModel;
+    private JLabel statsLabel;
+    private JFrame window;
+    private TrayIcon trayIcon;
+    private Supplier<TodoService.Status> filter;
+    private boolean loading;
+    private boolean reloadRequested;
 
     public SwingApp(TodoService service) {
         this.service = service;
@@ -22,6 +32,7 @@ public final class SwingApp {
 
     private void createAndShow() {
         var frame = new JFrame("Todo");
+        window = frame;
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
 
         var root = new JPanel(new BorderLayout(12, 12));
@@ -45,13 +56,15 @@ public final class SwingApp {
         top.add(refreshBtn);
         root.add(top, BorderLayout.NORTH);
 
-        var listModel = new DefaultListModel<Task>();
+        listModel = new TaskListModel(service);
         var list = new JList<Task>(listModel) {
             @Override public Dimension getPreferredScrollableViewportSize() {
                 return new Dimension(580, 300);
             }
         };
         list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // a fixed height lets the list place rows without measuring each one
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 4);
         list.setCellRenderer(new DefaultListCellRenderer() {
             @Override public Component getListCellRendererComponent(JList<?> l, Object value, int index, boolean isSelected, boolean cellHasFocus) {
                 var comp = super.getListCellRendererComponent(l, value, index, isSelected, cellHasFocus);
@@ -70,17 +83,21 @@ public final class SwingApp {
         var doneBtn = new JButton("Mark Done");
         var removeBtn = new JButton("Remove");
         var setDueBtn = new JButton("Set Due");
+        var undoBtn = new JButton("Undo");
+        var redoBtn = new JButton("Redo");
         var showPendingBtn = new JToggleButton("Pending");
         var showDoneBtn = new JToggleButton("Done");
         var showAllBtn = new JToggleButton("All", true);
         ButtonGroup grp = new ButtonGroup();
         grp.add(showAllBtn); grp.add(showPendingBtn); grp.add(showDoneBtn);
 
-        var statsLabel = new JLabel(" ");
+        statsLabel = new JLabel(" ");
         var bottomLeft = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
         bottomLeft.add(doneBtn);
         bottomLeft.add(removeBtn);
         bottomLeft.add(setDueBtn);
+        bottomLeft.add(undoBtn);
+        bottomLeft.add(redoBtn);
         bottomLeft.add(showAllBtn);
         bottomLeft.add(showPendingBtn);
         bottomLeft.add(showDoneBtn);
@@ -90,17 +107,8 @@ public final class SwingApp {
         bottom.add(statsLabel, BorderLayout.EAST);
         root.add(bottom, BorderLayout.SOUTH);
 
-        Runnable refresh = () -> {
-            List<Task> tasks = switch (selectedFilter(showAllBtn, showPendingBtn, showDoneBtn)) {
-                case ALL -> service.listAll();
-                case PENDING -> service.listPending();
-                case DONE -> service.listDone();
-            };
-            listModel.clear();
-            tasks.forEach(listModel::addElement);
-            var s = service.stats();
-            statsLabel.setText("Total: " + s.total() + " | Done: " + s.done() + " | Pending: " + s.pending());
-        };
+        filter = () -> selectedFilter(showAllBtn, showPendingBtn, showDoneBtn);
+        Runnable refresh = this::refresh;
 
         addBtn.addActionListener(e -> {
             String title = titleField.getText().trim();
@@ -160,18 +168,116 @@ public final class SwingApp {
             refresh.run();
         });
 
+        // undoing an import can rewrite many tasks, so these run off the event thread
+        undoBtn.addActionListener(e -> inBackground(() -> service.undo().isPresent()));
+        redoBtn.addActionListener(e -> inBackground(() -> service.redo().isPresent()));
+
         refresh.run();
+        // a refresh only counts the tasks; the list reads the rows it shows
+        service.onExternalChange(changes -> SwingUtilities.invokeLater(refresh));
 
         frame.pack();
         frame.setLocationByPlatform(true);
         frame.setVisible(true);
     }
 
-    private Filter selectedFilter(AbstractButton all, AbstractButton pending, AbstractButton done) {
-        if (pending.isSelected()) return Filter.PENDING;
-        if (done.isSelected()) return Filter.DONE;
-        return Filter.ALL;
+    /**
+     * Counts the tasks off the event thread and resets the list to them; a reload
+     * asked for while one runs follows once it finishes.
+     */
+    private void refresh() {
+        if (loading) {
+            reloadRequested = true;
+            return;
+        }
+        loading = true;
+        TodoService.Status status = filter.get();
+        new SwingWorker<TodoService.Stats, Void>() {
+            @Override protected TodoService.Stats doInBackground() {
+                return service.stats();
+            }
+
+            @Override protected void done() {
+                try {
+                    var stats = get();
+                    listModel.reset(status, switch (status) {
+                        case ALL -> stats.total();
+                        case PENDING -> stats.pending();
+                        case DONE -> stats.done();
+                    });
+                    statsLabel.setText("Total: " + stats.total() + " | Done: " + stats.done() + " | Pending: " + stats.pending()
+                            + " | Overdue: " + stats.overdue() + " | Due today: " + stats.dueToday());
+                } catch (Exception ex) {
+                    statsLabel.setText("Load failed: " + ex.getMessage());
+                } finally {
+                    loading = false;
+                    if (reloadRequested) {
+                        reloadRequested = false;
+                        refresh();
+                    }
+                }
+            }
+        }.execute();
     }
 
-    private enum Filter { ALL, PENDING, DONE }
+    /** Runs {@code action} off the event thread, then refreshes; beeps if it had nothing to do. */
+    private void inBackground(BooleanSupplier action) {
+        new SwingWorker<Boolean, Void>() {
+            @Override protected Boolean doInBackground() {
+                return action.getAsBoolean();
+            }
+
+            @Override protected void done() {
+                try {
+                    if (!get()) Toolkit.getDefaultToolkit().beep();
+                } catch (Exception ex) {
+                    statsLabel.setText("Failed: " + ex.getMessage());
+                } finally {
+                    refresh();
+                }
+            }
+        }.execute();
+    }
+
+    /** Shows a reminder as a tray notification, or in a small window where there is no tray. Called from any thread. */
+    void remind(ReminderScheduler.Reminder reminder) {
+        SwingUtilities.invokeLater(() -> {
+            if (filter != null) refresh(); // the due counts have moved on
+            String text = reminder.summary();
+            if (SystemTray.isSupported()) {
+                try {
+                    if (trayIcon == null) {
+                        trayIcon = new TrayIcon(trayImage(), "Todo");
+                        trayIcon.setImageAutoSize(true);
+                        trayIcon.addActionListener(e -> { if (window != null) window.toFront(); });
+                        SystemTray.getSystemTray().add(trayIcon);
+                    }
+                    trayIcon.displayMessage("Todo reminder", text, TrayIcon.MessageType.INFO);
+                    return;
+                } catch (AWTException e) {
+                    // no room in the tray after all: fall back to a window
+                }
+            }
+            var dialog = new JOptionPane(text, JOptionPane.INFORMATION_MESSAGE).createDialog(window, "Todo reminder");
+            dialog.setModal(false);
+            dialog.setVisible(true);
+        });
+    }
+
+    private static Image trayImage() {
+        var image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        var g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(0x2e7d32));
+        g.setStroke(new BasicStroke(2.5f));
+        g.drawPolyline(new int[] {3, 7, 13}, new int[] {8, 12, 4}, 3);
+        g.dispose();
+        return image;
+    }
+
+    private TodoService.Status selectedFilter(AbstractButton all, AbstractButton pending, AbstractButton done) {
+        if (pending.isSelected()) return TodoService.Status.PENDING;
+        if (done.isSelected()) return TodoService.Status.DONE;
+        return TodoService.Status.ALL;
+    }
 }
@@ -0,0 +1,92 @@
+package be.todo.ui;
+
+import be.todo.model.Task;
+import be.todo.service.TodoService;
+
+import javax.swing.AbstractListModel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * List model that reads the tasks of one status lazily, in id order. Rows are
+ * fetched a page at a time through {@link TodoService#stream(TodoService.Status, long)}
+ * when the list asks for them, and only the last few pages are kept, so
+ * showing a long list costs the rows on screen rather than the whole list.
+ * <p>
+ * Pages are found by the id just before them. Those ids are remembered for
+ * every page passed on the way to one that is asked for, so scrolling reads
+ * each page once, and a jump reads from the nearest page already known.
+ * <p>
+ * The size is counted elsewhere, off the event thread, and handed to
+ * {@link #reset}, which drops the pages and tells the list that every row may
+ * have changed. Rows past the end of the tasks, when some were removed since
+ * they were counted, read as null until the next reset. Must only be used on
+ * the event dispatch thread.
+ */
+final class TaskListModel extends AbstractListModel<Task> {
+    static final int PAGE_SIZE = 256;
+    private static final int CACHED_PAGES = 8;
+
+    private final TodoService service;
+    private TodoService.Status status = TodoService.Status.ALL;
+    private int size;
+    /** The id before the first row of each page reached so far; page 0 starts after id 0. */
+    private final TreeMap<Integer, Long> pageStarts = new TreeMap<>(Map.of(0, 0L));
+    private final Map<Integer, Task[]> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, Task[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    TaskListModel(TodoService service) {
+        this.service = service;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Task getElementAt(int index) {
+        Task[] page = page(index / PAGE_SIZE);
+        int row = index % PAGE_SIZE;
+        return row < page.length ? page[row] : null;
+    }
+
+    /** Shows {@code newSize} tasks in {@code newStatus}, as they are now. */
+    void reset(TodoService.Status newStatus, int newSize) {
+        int oldSize = size;
+        status = newStatus;
+        size = newSize;
+        pages.clear();
+        pageStarts.tailMap(0, false).clear();
+        if (newSize < oldSize) fireIntervalRemoved(this, newSize, oldSize - 1);
+        if (newSize > oldSize) fireIntervalAdded(this, oldSize, newSize - 1);
+        if (Math.min(oldSize, newSize) > 0) fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+    }
+
+    private Task[] page(int number) {
+        Task[] cached = pages.get(number);
+        if (cached != null) return cached;
+        Map.Entry<Integer, Long> start = pageStarts.floorEntry(number);
+        int at = start.getKey();
+        Iterator<Task> it = service.stream(status, start.getValue()).iterator();
+        while (at < number) {
+            long last = -1;
+            for (int i = 0; i < PAGE_SIZE && it.hasNext(); i++) last = it.next().getId();
+            if (last < 0) return new Task[0];
+            pageStarts.put(++at, last);
+        }
+        Task[] rows = new Task[PAGE_SIZE];
+        int n = 0;
+        while (n < PAGE_SIZE && it.hasNext()) rows[n++] = it.next();
+        if (n < PAGE_SIZE) rows = Arrays.copyOf(rows, n);
+        else pageStarts.put(number + 1, rows[n - 1].getId());
+        pages.put(number, rows);
+        return rows;
+    }
+}
@@ -1,18 +1,40 @@
 package be.todo.ui;
 
+import be.todo.metrics.Metrics;
+import be.todo.service.ReminderScheduler;
 import be.todo.service.TodoService;
+import be.todo.storage.ConflictPolicy;
+import be.todo.storage.Durability;
+import be.todo.storage.StorageMode;
+import be.todo.storage.StorageOptions;
 import be.todo.storage.TaskRepository;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Entry point. The CLI, daemon and server paths never reach {@link SwingApp},
+ * so a command-line run loads no AWT or Swing classes.
+ */
 public final class TodoApp {
-    public static void main(String[] args) {
-        System.setProperty("java.awt.headless", "false");
+    /** How often {@code --metrics-file} is rewritten. */
+    private static final Duration METRICS_DUMP_INTERVAL = Duration.ofSeconds(10);
 
+    public static void main(String[] args) {
         Path dataFile = Path.of("todo-data.json");
         boolean forceCli = false;
+        int servePort = -1;
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        boolean daemon = false, useDaemon = true;
+        var storage = StorageOptions.defaults();
+        Duration flushInterval = TodoService.DEFAULT_FLUSH_INTERVAL;
+        Path metricsFile = null;
+        int undoSteps = TodoService.DEFAULT_UNDO_STEPS;
+        boolean reminders = true;
 
         List<String> rest = new ArrayList<>();
         for (int i = 0; i < args.length; i++) {
@@ -24,6 +46,111 @@ public final class TodoApp {
                     }
                     dataFile = Path.of(args[++i]);
                 }
+                case "--storage" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("Missing value for --storage (json|log|binary|arena)");
+                        return;
+                    }
+                    StorageMode mode = switch (args[++i].toLowerCase()) {
+                        case "json" -> StorageMode.JSON_LINES;
+                        case "log" -> StorageMode.LOG;
+                        case "binary" -> StorageMode.BINARY;
+                        case "arena" -> StorageMode.ARENA;
+                        default -> null;
+                    };
+                    if (mode == null) {
+                        System.err.println("Unknown value for --storage (json|log|binary|arena): " + args[i]);
+                        return;
+                    }
+                    if (!mode.isSupported()) {
+                        System.err.println("--storage " + args[i] + " is not available on this platform");
+                        return;
+                    }
+                    storage = storage.withMode(mode);
+                }
+                case "--mmap" -> storage = storage.withParallelLoad(true);
+                case "--durability" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("Missing value for --durability (none|batch|write)");
+                        return;
+                    }
+                    Durability durability = switch (args[++i].toLowerCase()) {
+                        case "none" -> Durability.NONE;
+                        case "batch" -> Durability.PER_BATCH;
+                        case "write" -> Durability.PER_WRITE;
+                        default -> null;
+                    };
+                    if (durability == null) {
+                        System.err.println("Unknown value for --durability (none|batch|write): " + args[i]);
+                        return;
+                    }
+                    storage = storage.withDurability(durability);
+                }
+                case "--on-conflict" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("Missing value for --on-conflict (fail|rebase)");
+                        return;
+                    }
+                    ConflictPolicy policy = switch (args[++i].toLowerCase()) {
+                        case "fail" -> ConflictPolicy.FAIL;
+                        case "rebase" -> ConflictPolicy.REBASE;
+                        default -> null;
+                    };
+                    if (policy == null) {
+                        System.err.println("Unknown value for --on-conflict (fail|rebase): " + args[i]);
+                        return;
+                    }
+                    storage = storage.withOnConflict(policy);
+                }
+                case "--flush-ms" -> {
+                    long ms = i + 1 < args.length ? parseCount(args[++i]) : -1;
+                    if (ms < 0) {
+                        System.err.println("Missing or bad value for --flush-ms (a number of milliseconds, 0 or more)");
+                        return;
+                    }
+                    flushInterval = Duration.ofMillis(ms);
+                }
+                case "--undo-steps" -> {
+                    long steps = i + 1 < args.length ? parseCount(args[++i]) : -1;
+                    if (steps < 0 || steps > Integer.MAX_VALUE) {
+                        System.err.println("Missing or bad value for --undo-steps (a number of steps, 0 or more)");
+                        return;
+                    }
+                    undoSteps = (int) steps;
+                }
+                case "--metrics-file" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("Missing value for --metrics-file");
+                        return;
+                    }
+                    metricsFile = Path.of(args[++i]);
+                }
+                case "--serve" -> {
+                    servePort = 8080;
+                    if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                        long port = parseCount(args[++i]);
+                        if (port < 0 || port > 65535) {
+                            System.err.println("Bad value for --serve (a port, 0 to 65535): " + args[i]);
+                            return;
+                        }
+                        servePort = (int) port;
+                    }
+                }
+                case "--bind" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("Missing value for --bind (an address, e.g. 0.0.0.0 for all interfaces)");
+                        return;
+                    }
+                    try {
+                        bindAddress = InetAddress.getByName(args[++i]);
+                    } catch (UnknownHostException e) {
+                        System.err.println("Unknown address for --bind: " + args[i]);
+                        return;
+                    }
+                }
+                case "--no-reminders" -> reminders = false;
+                case "--daemon" -> daemon = true;
+                case "--no-daemon" -> useDaemon = false;
                 case "--cli" -> forceCli = true;
                 case "--gui" -> forceCli = false; // explicit GUI
                 default -> rest.add(args[i]);
@@ -31,20 +158,82 @@ public final class TodoApp {
         }
         args = rest.toArray(String[]::new);
 
-        var repo = new TaskRepository(dataFile);
-        var service = new TodoService(repo);
+        boolean oneShot = forceCli && servePort < 0 && !daemon && args.length > 0 && !"shell".equalsIgnoreCase(args[0]);
+        if (oneShot && useDaemon && CliDaemon.forward(dataFile, CommandProcessor.join(args), System.out)) return;
+
+        var repo = new TaskRepository(dataFile, storage);
+        var service = new TodoService(repo, flushInterval);
+        if (undoSteps > 0) service.enableUndo(undoSteps, TodoService.DEFAULT_UNDO_BYTES);
+        var api = servePort >= 0 ? new HttpApi(service, bindAddress, servePort) : null;
+        var cliDaemon = daemon ? new CliDaemon(service, CliDaemon.socketFor(dataFile)) : null;
+        var metricsDump = metricsFile != null ? Metrics.global().dumpEvery(metricsFile, METRICS_DUMP_INTERVAL) : null;
+        // JMX costs startup time that only long-running processes win back
+        if (!oneShot) Metrics.global().registerMBeans();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (api != null) api.close();
+                if (cliDaemon != null) cliDaemon.close();
+                service.close();
+            } catch (Exception e) {
+                System.err.println("Error: unsaved changes were not written: " + e.getMessage());
+            } finally {
+                repo.close();
+                closeQuietly(metricsDump);
+            }
+        }, "todo-shutdown"));
+
+        if (api != null) {
+            System.out.println("Serving " + dataFile.toAbsolutePath() +  " on " + api.url() + "/tasks");
+        }
+        if (cliDaemon != null) {
+            System.out.println("Daemon for " + dataFile.toAbsolutePath() + " listening on " + CliDaemon.socketFor(dataFile));
+        }
+        if (api != null || cliDaemon != null) return;
 
         if (!forceCli) {
-            new SwingApp(service).start();
+            startGui(service, reminders);
             return;
         }
 
         var processor = new CommandProcessor(service);
         if (args.length == 0 || "shell".equalsIgnoreCase(args[0])) {
             System.out.println("(using data file: " + dataFile.toAbsolutePath() + ")");
-            new ConsoleShell(processor).run();
+            try (var ignored = reminders ? new ReminderScheduler(service, TodoApp::printReminder) : null) {
+                new ConsoleShell(processor).run();
+            }
         } else {
-            processor.process(String.join(" ", args));
+            processor.process(CommandProcessor.join(args));
+        }
+    }
+
+    /** The non-negative number {@code value} spells, or -1 if it is not one. */
+    private static long parseCount(String value) {
+        try {
+            return value.matches("\\d+") ? Long.parseLong(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1; // too large
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource == null) return;
+        try {
+            resource.close();
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private static void printReminder(ReminderScheduler.Reminder reminder) {
+        System.out.println();
+        System.out.println("Reminder: " + reminder.summary());
+    }
+
+    /** Kept out of {@link #main} so that verifying it does not load any Swing class. */
+    private static void startGui(TodoService service, boolean reminders) {
+        System.setProperty("java.awt.headless", "false");
+        var app = new SwingApp(service);
+        app.start();
+        if (reminders) new ReminderScheduler(service, app::remind); // runs for the life of the process
+    }
+}
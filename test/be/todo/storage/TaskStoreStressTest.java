@@ -0,0 +1,125 @@
+package be.todo.storage;
+
+import be.todo.model.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Threads adding, completing and removing tasks in one {@link TaskStore} while
+ * the background writer flushes, once per storage mode. Afterwards the store
+ * must hold exactly the tasks the threads left behind, and the flushed file
+ * must read back as exactly the tasks in memory. Run by {@code ./gradlew
+ * stressTest}, part of {@code check}; throughput is measured by the
+ * {@code ConcurrencyBenchmark} in {@code bench} instead.
+ */
+public final class TaskStoreStressTest {
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int OPS_PER_THREAD = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        for (StorageMode mode : StorageMode.values()) {
+            if (!mode.isSupported()) continue;
+            Path dir = Files.createTempDirectory("todo-stress");
+            try {
+                run(mode, dir.resolve("tasks.json"));
+            } finally {
+                delete(dir);
+            }
+            System.out.println(mode + ": ok");
+        }
+    }
+
+    private static void run(StorageMode mode, Path file) throws InterruptedException {
+        // what each task should look like at the end: true if done; removed tasks are not in it
+        ConcurrentHashMap<Long, Boolean> expected = new ConcurrentHashMap<>();
+        List<Throwable> failures = new ArrayList<>();
+        try (TaskRepository repo = new TaskRepository(file, mode)) {
+            TaskStore store = new TaskStore(repo, Duration.ofMillis(5));
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Thread> threads = new ArrayList<>();
+                for (int n = 0; n < THREADS; n++) {
+                    threads.add(Thread.ofPlatform().start(() -> {
+                        try {
+                            start.await();
+                            work(store, expected);
+                        } catch (Throwable e) {
+                            synchronized (failures) {
+                                failures.add(e);
+                            }
+                        }
+                    }));
+                }
+                start.countDown();
+                for (Thread t : threads) t.join();
+                if (!failures.isEmpty()) throw new AssertionError(mode + ": a writer failed", failures.get(0));
+
+                check(mode + " tasks in memory", expected.size(), store.size());
+                for (Task t : store.all()) {
+                    Boolean done = expected.get(t.getId());
+                    if (done == null) throw new AssertionError(mode + ": removed task #" + t.getId() + " is still there");
+                    if (done != t.isDone()) throw new AssertionError(mode + ": done flag of #" + t.getId() + " was lost");
+                }
+                check(mode + " done count", expected.values().stream().filter(d -> d).count(), store.doneCount());
+
+                store.flush();
+                List<Task> inMemory = store.all();
+                try (TaskRepository reopened = new TaskRepository(file, mode)) {
+                    List<Task> onDisk = reopened.findAll();
+                    check(mode + " tasks on disk", inMemory.size(), onDisk.size());
+                    for (int i = 0; i < onDisk.size(); i++) {
+                        if (!onDisk.get(i).toJson().equals(inMemory.get(i).toJson())) {
+                            throw new AssertionError(mode + ": task #" + inMemory.get(i).getId() + " differs on disk");
+                        }
+                    }
+                }
+            } finally {
+                store.close();
+            }
+        }
+    }
+
+    /** Adds a task, then completes or removes one of its own at random, so that no two threads race on a task's fate. */
+    private static void work(TaskStore store, ConcurrentHashMap<Long, Boolean> expected) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Long> mine = new ArrayList<>();
+        for (int i = 0; i < OPS_PER_THREAD; i++) {
+            Task t = store.create("stress " + i, null);
+            if (expected.putIfAbsent(t.getId(), false) != null) throw new AssertionError("id #" + t.getId() + " handed out twice");
+            mine.add(t.getId());
+            long id = mine.get(random.nextInt(mine.size()));
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    if (store.update(id, task -> task.withDone(true))) expected.put(id, true);
+                }
+                case 1 -> {
+                    if (store.remove(id) != null) {
+                        expected.remove(id);
+                        mine.remove(Long.valueOf(id));
+                    }
+                }
+                default -> { }
+            }
+        }
+    }
+
+    private static void check(String what, long expected, long actual) {
+        if (expected != actual) throw new AssertionError(what + ": expected " + expected + ", found " + actual);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+}